@@ -1,6 +1,8 @@
 package com.harmoniChat.app_hc.api.v1.controllers.album;
 
 import com.harmoniChat.app_hc.entities_repositories_and_services.album.Album;
+import com.harmoniChat.app_hc.entities_repositories_and_services.album.AlbumGenerationJob;
+import com.harmoniChat.app_hc.entities_repositories_and_services.album.AlbumGenerationJobService;
 import com.harmoniChat.app_hc.entities_repositories_and_services.album.AlbumService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -11,12 +13,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/albums")
 @RequiredArgsConstructor
 public class AlbumController {
     private final AlbumService albumService;
+    private final AlbumGenerationJobService albumGenerationJobService;
 
     @GetMapping("/family/{familyId}")
     public ResponseEntity<List<AlbumService.AlbumResponse>> getFamilyAlbums(@PathVariable UUID familyId) {
@@ -33,10 +37,24 @@ public class AlbumController {
         return ResponseEntity.ok(albumService.createManualAlbum(title, description, familyId, postIds));
     }
 
+    // Responde al instante con el trabajo; el progreso llega por /topic/family.{id}.albums
     @PostMapping("/generate/{familyId}")
     public ResponseEntity<?> generateAutomaticAlbums(@PathVariable UUID familyId) {
-        albumService.generateAutomaticAlbums(familyId);
-        return ResponseEntity.ok().build();
+        try {
+            AlbumGenerationJob job = albumGenerationJobService.submit(familyId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.snapshot());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", "Hay demasiadas generaciones de álbumes en curso, intenta más tarde"));
+        }
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getGenerationJob(@PathVariable UUID jobId) {
+        return albumGenerationJobService.findJob(jobId)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(job.snapshot()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Trabajo no encontrado")));
     }
 
     @DeleteMapping("/delete/{albumId}")
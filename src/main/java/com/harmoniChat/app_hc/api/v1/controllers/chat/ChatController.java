@@ -1,16 +1,27 @@
 package com.harmoniChat.app_hc.api.v1.controllers.chat;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.harmoniChat.app_hc.entities_repositories_and_services.blob_storage.BlobContainerType;
 import com.harmoniChat.app_hc.entities_repositories_and_services.blob_storage.BlobStorageService;
+import com.harmoniChat.app_hc.entities_repositories_and_services.chat.ChatMessageView;
+import com.harmoniChat.app_hc.entities_repositories_and_services.chat.ChatReadStateService;
 import com.harmoniChat.app_hc.entities_repositories_and_services.chat.Message;
 import com.harmoniChat.app_hc.entities_repositories_and_services.chat.MessageService;
+import com.harmoniChat.app_hc.entities_repositories_and_services.chat.MessageSummary;
+import com.harmoniChat.app_hc.entities_repositories_and_services.chat.MessageWriteBehindService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 @RestController
@@ -18,10 +29,13 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class ChatController {
     private final MessageService messageService;
+    private final ChatReadStateService chatReadStateService;
     private final BlobStorageService blobStorageService;
+    private final ObjectMapper objectMapper;
+    private final Optional<MessageWriteBehindService> writeBehindService;
 
     @PostMapping("/send")
-    public ResponseEntity<Message> sendMessage(
+    public ResponseEntity<ChatMessageView> sendMessage(
             @RequestParam UUID userId,
             @RequestParam UUID familyId,
             @RequestParam String content,
@@ -38,40 +52,131 @@ public class ChatController {
             }
         }
 
+        // Con escritura diferida todos los envíos pasan por la misma cola; la respuesta lleva el
+        // id del mensaje y el seq llega con la difusión o la sincronización incremental
+        if (writeBehindService.isPresent()) {
+            MessageWriteBehindService.Accepted accepted =
+                    writeBehindService.get().submit(userId, familyId, content, type, fileUrl);
+            return ResponseEntity.ok(messageService.toView(accepted.message()));
+        }
+
         Message message = messageService.sendMessage(userId, familyId, content, type, fileUrl);
-        return ResponseEntity.ok(message);
+        return ResponseEntity.ok(messageService.toView(MessageSummary.from(message)));
+    }
+
+    @GetMapping("/history")
+    public ResponseEntity<MessageService.MessagePage> getHistory(
+            @RequestParam UUID familyId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + MessageService.DEFAULT_HISTORY_PAGE_SIZE) int size) {
+
+        try {
+            return ResponseEntity.ok(messageService.getHistoryPage(familyId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
+    /**
+     * @deprecated usar {@code /chat/history}. Se conserva como respaldo y escribe el
+     * historial en streaming en lugar de construir la lista completa en memoria.
+     */
+    @Deprecated
     @GetMapping("/messages")
-    public ResponseEntity<List<Message>> getMessages(@RequestParam UUID familyId) {
-        List<Message> messages = messageService.getFamilyMessages(familyId);
-        return ResponseEntity.ok(messages);
+    public ResponseEntity<StreamingResponseBody> getMessages(@RequestParam UUID familyId) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                messageService.streamFamilyMessages(familyId, message -> {
+                    try {
+                        objectMapper.writeValue(generator, message);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header("Deprecation", "true")
+                .header("Link", "</chat/history>; rel=\"successor-version\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
+    /**
+     * @deprecated usar {@code /chat/v2/latest-messages}. Responde lo mismo
+     * ({@link ChatMessageView}, sin las entidades User ni Family) y solo se conserva la ruta.
+     */
+    @Deprecated
     @GetMapping("/latest-messages")
-    public ResponseEntity<List<Message>> getLatestMessages(
+    public ResponseEntity<List<ChatMessageView>> getLatestMessages(
+            @RequestParam UUID familyId,
+            @RequestParam(defaultValue = "50") int limit) {
+
+        List<ChatMessageView> messages = messageService.getLatestMessages(familyId, limit);
+        return ResponseEntity.ok()
+                .header("Deprecation", "true")
+                .header("Link", "</chat/v2/latest-messages>; rel=\"successor-version\"")
+                .body(messages);
+    }
+
+    /**
+     * Últimos mensajes en el formato de las demás respuestas del chat ({@link ChatMessageView}),
+     * servidos desde la caché de mensajes recientes cuando es posible.
+     */
+    @GetMapping("/v2/latest-messages")
+    public ResponseEntity<List<ChatMessageView>> getLatestMessageViews(
             @RequestParam UUID familyId,
             @RequestParam(defaultValue = "50") int limit) {
 
-        List<Message> messages = messageService.getLatestMessages(familyId, limit);
+        List<ChatMessageView> messages = messageService.getLatestMessages(familyId, limit);
         return ResponseEntity.ok(messages);
     }
 
     @GetMapping("/new-messages")
-    public ResponseEntity<List<Message>> getNewMessages(
+    public ResponseEntity<MessageService.MessageDelta> getNewMessages(
             @RequestParam UUID familyId,
-            @RequestParam UUID lastMessageId) {
+            @RequestParam(required = false) Long afterSeq,
+            @RequestParam(required = false) UUID lastMessageId,
+            @RequestParam(defaultValue = "" + MessageService.DEFAULT_SYNC_LIMIT) int limit) {
 
-        List<Message> messages = messageService.getNewMessages(familyId, lastMessageId);
-        return ResponseEntity.ok(messages);
+        return ResponseEntity.ok(messageService.getNewMessages(familyId, afterSeq, lastMessageId, limit));
     }
 
     @PostMapping("/mark-as-read")
-    public ResponseEntity<Void> markMessagesAsRead(
+    public ResponseEntity<Map<String, Integer>> markMessagesAsRead(
+            @RequestParam UUID familyId,
+            @RequestParam UUID userId,
+            @RequestParam(required = false) Long upToSeq) {
+
+        int updated = messageService.markMessagesAsRead(familyId, userId, upToSeq);
+        return ResponseEntity.ok(Map.of("updated", updated));
+    }
+
+    @GetMapping("/unread-count")
+    public ResponseEntity<ChatReadStateService.UnreadCount> getUnreadCount(
             @RequestParam UUID familyId,
             @RequestParam UUID userId) {
 
-        messageService.markMessagesAsRead(familyId, userId);
-        return ResponseEntity.ok().build();
+        return ResponseEntity.ok(chatReadStateService.unreadCount(familyId, userId));
+    }
+
+    @GetMapping("/unread-counts")
+    public ResponseEntity<List<ChatReadStateService.UnreadCount>> getUnreadCounts(
+            @RequestParam UUID userId,
+            @RequestParam(required = false) List<UUID> familyIds) {
+
+        return ResponseEntity.ok(chatReadStateService.unreadCounts(userId, familyIds));
+    }
+
+    @PostMapping("/read-state")
+    public ResponseEntity<ChatReadStateService.UnreadCount> updateReadState(
+            @RequestParam UUID familyId,
+            @RequestParam UUID userId,
+            @RequestParam(required = false) Long lastReadSeq) {
+
+        return ResponseEntity.ok(chatReadStateService.markRead(familyId, userId, lastReadSeq));
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,8 @@ package com.harmoniChat.app_hc.api.v1.controllers.chat;
 
 import com.harmoniChat.app_hc.entities_repositories_and_services.chat.Message;
 import com.harmoniChat.app_hc.entities_repositories_and_services.chat.MessageService;
+import com.harmoniChat.app_hc.entities_repositories_and_services.chat.MessageSummary;
+import com.harmoniChat.app_hc.entities_repositories_and_services.chat.MessageWriteBehindService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,6 +14,7 @@ import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import java.util.Optional;
 import java.util.UUID;
 
 @Controller
@@ -20,10 +23,14 @@ public class WebSocketChatController {
 
     private final SimpMessagingTemplate messagingTemplate;
     private final MessageService messageService;
+    private final Optional<MessageWriteBehindService> writeBehindService;
 
-    public WebSocketChatController(SimpMessagingTemplate messagingTemplate, MessageService messageService) {
+    public WebSocketChatController(SimpMessagingTemplate messagingTemplate,
+                                   MessageService messageService,
+                                   Optional<MessageWriteBehindService> writeBehindService) {
         this.messagingTemplate = messagingTemplate;
         this.messageService = messageService;
+        this.writeBehindService = writeBehindService;
     }
 
     @MessageMapping("/chat.send")
@@ -41,6 +48,27 @@ public class WebSocketChatController {
         }
 
         try {
+            // Escritura diferida: la inserción se hace por lotes y se difunde al confirmarse,
+            // con el seq ya asignado
+            if (writeBehindService.isPresent()) {
+                MessageWriteBehindService.Accepted accepted = writeBehindService.get().submit(
+                        message.getUser().getId(),
+                        message.getFamily().getId(),
+                        message.getContent(),
+                        message.getType(),
+                        message.getFileURL()
+                );
+
+                accepted.committed().whenComplete((saved, error) -> {
+                    if (error != null) {
+                        logger.error("Mensaje {} no se pudo guardar", accepted.message().id(), error);
+                        return;
+                    }
+                    messagingTemplate.convertAndSend("/topic/family." + saved.familyId(), messageService.toView(saved));
+                });
+                return;
+            }
+
             Message savedMessage = messageService.sendMessage(
                     message.getUser().getId(),
                     message.getFamily().getId(),
@@ -49,9 +77,10 @@ public class WebSocketChatController {
                     message.getFileURL()
             );
 
+            // Se difunde la vista compacta, no la entidad con User y Family completos
             messagingTemplate.convertAndSend(
                     "/topic/family." + savedMessage.getFamily().getId(),
-                    savedMessage
+                    messageService.toView(MessageSummary.from(savedMessage))
             );
         } catch (Exception e) {
             logger.error("Error al procesar mensaje", e);
@@ -61,7 +90,7 @@ public class WebSocketChatController {
     @MessageMapping("/chat.read")
     public void markMessagesAsRead(@Payload ReadMessagesRequest request) {
         try {
-            messageService.markMessagesAsRead(request.getFamilyId(), request.getUserId());
+            messageService.markMessagesAsRead(request.getFamilyId(), request.getUserId(), request.getUpToSeq());
         } catch (Exception e) {
             logger.error("Error al marcar mensajes como leídos", e);
         }
@@ -73,5 +102,6 @@ public class WebSocketChatController {
     public static class ReadMessagesRequest {
         private UUID familyId;
         private UUID userId;
+        private Long upToSeq; // opcional: marcar solo hasta este seq
     }
 }
\ No newline at end of file
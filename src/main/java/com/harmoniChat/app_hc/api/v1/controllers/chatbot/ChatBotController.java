@@ -1,32 +1,43 @@
 package com.harmoniChat.app_hc.api.v1.controllers.chatbot;
 
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
 import com.harmoniChat.app_hc.entities_repositories_and_services.chatbot.ChatMessage;
+import com.harmoniChat.app_hc.entities_repositories_and_services.chatbot.ChatbotConversationService;
+import com.harmoniChat.app_hc.entities_repositories_and_services.chatbot.EmotionIntentMatcher;
 import com.harmoniChat.app_hc.entities_repositories_and_services.chatbot.GeminiChatService;
-import com.harmoniChat.app_hc.entities_repositories_and_services.emotion_diary.EmotionService;
-import com.harmoniChat.app_hc.entities_repositories_and_services.emotion_diary.Emotion;
+import com.harmoniChat.app_hc.entities_repositories_and_services.emotion_diary.EmotionSummaryService;
+import com.harmoniChat.app_hc.entities_repositories_and_services.emotion_diary.EmotionSummaryService.EmotionSummary;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/chatbot")
 public class ChatBotController {
 
     private final GeminiChatService chatService;
-    private final EmotionService emotionService;
+    private final ChatbotConversationService conversationService;
+    private final EmotionSummaryService emotionSummaryService;
+    private final EmotionIntentMatcher emotionIntentMatcher;
 
     @Autowired
-    public ChatBotController(GeminiChatService chatService, EmotionService emotionService) {
+    public ChatBotController(GeminiChatService chatService,
+                             ChatbotConversationService conversationService,
+                             EmotionSummaryService emotionSummaryService,
+                             EmotionIntentMatcher emotionIntentMatcher) {
         this.chatService = chatService;
-        this.emotionService = emotionService;
+        this.conversationService = conversationService;
+        this.emotionSummaryService = emotionSummaryService;
+        this.emotionIntentMatcher = emotionIntentMatcher;
     }
 
     @PostMapping("/chat")
-    public ChatMessage chatWithBot(@Valid @RequestBody ChatRequest request) {
+    public Mono<ChatMessage> chatWithBot(@Valid @RequestBody ChatRequest request) {
         if (request.getUserId() == null) {
             throw new IllegalArgumentException("Se requiere el ID del usuario");
         }
@@ -34,53 +45,60 @@ public class ChatBotController {
         String userMessage = request.getMessage();
         UUID userId = request.getUserId();
 
-        if (isEmotionRelated(userMessage)) {
-            List<Emotion> userEmotions = emotionService.findAllByUserId(userId);
+        Set<String> emotionCategories = emotionIntentMatcher.match(userMessage);
+        if (!emotionCategories.isEmpty()) {
+            // Resumen precalculado: no se cargan todas las emociones en cada turno
+            EmotionSummary summary = emotionSummaryService.summary(userId);
 
-            if (!userEmotions.isEmpty()) {
-                userMessage = enhanceMessageWithEmotionContext(userMessage, userEmotions);
+            if (!summary.isEmpty()) {
+                userMessage = enhanceMessageWithEmotionContext(userMessage, summary, emotionCategories);
             }
         }
 
-        String response = chatService.getChatResponse(
+        // Con conversationId el historial lo guarda el servidor y el cliente solo envía el mensaje nuevo
+        if (request.getConversationId() != null) {
+            return conversationService.reply(request.getConversationId(), userId, request.getMessage(), userMessage)
+                    .map(response -> new ChatMessage("assistant", response))
+                    // Por REST no llega la familia: el turno en el límite de llamadas a Gemini es por usuario
+                    .contextWrite(OutboundApiGovernor.forFamily(userId));
+        }
+
+        // Respuesta asíncrona: el hilo de Tomcat se libera mientras se espera a Gemini
+        return chatService.chatResponse(
                 userMessage,
                 request.getHistory() != null ? request.getHistory() : List.of()
-        );
-
-        return new ChatMessage("assistant", response);
+        ).map(response -> new ChatMessage("assistant", response))
+                .contextWrite(OutboundApiGovernor.forFamily(userId));
     }
 
-    private boolean isEmotionRelated(String message) {
-        String lowerMessage = message.toLowerCase();
-        return lowerMessage.contains("emo") ||
-                lowerMessage.contains("sentimiento") ||
-                lowerMessage.contains("como me siento") ||
-                lowerMessage.contains("diario") ||
-                lowerMessage.contains("estado de ánimo") ||
-                lowerMessage.contains("ánimo") ||
-                lowerMessage.matches(".*(triste|feliz|enojado|asustado|calma|sorpresa).*");
-    }
+    private String enhanceMessageWithEmotionContext(String originalMessage, EmotionSummary summary,
+                                                    Set<String> categories) {
+        StringBuilder context = new StringBuilder("\n\n" + GeminiChatService.EMOTION_CONTEXT_MARKER + ":\n");
 
-    private String enhanceMessageWithEmotionContext(String originalMessage, List<Emotion> emotions) {
-        StringBuilder context = new StringBuilder("\n\n[Contexto emocional del usuario]:\n");
+        // Emociones que el usuario menciona en este mensaje
+        List<String> mentioned = categories.stream().filter(category -> !"general".equals(category)).toList();
+        if (!mentioned.isEmpty()) {
+            context.append("Emociones mencionadas en el mensaje: ").append(String.join(", ", mentioned)).append("\n\n");
+        }
 
         // Resumen estadístico
         context.append("Frecuencia de emociones:\n");
-        emotions.stream()
-                .collect(Collectors.groupingBy(Emotion::getName, Collectors.counting()))
-                .forEach((emotion, count) ->
-                        context.append("- ").append(emotion).append(": ").append(count).append(" veces\n"));
+        summary.counts().forEach((emotion, count) ->
+                context.append("- ").append(emotion).append(": ").append(count).append(" veces\n"));
 
         // Análisis temporal
         context.append("\nRegistros recientes:\n");
-        emotions.stream()
-                .sorted((e1, e2) -> e2.getCreationDate().compareTo(e1.getCreationDate()))
-                .limit(3)
-                .forEach(e -> context.append("- ")
-                        .append(e.getCreationDate().toLocalDate())
-                        .append(": ").append(e.getName())
-                        .append(" - ").append(e.getDescription())
-                        .append("\n"));
+        summary.recent().forEach(e -> context.append("- ")
+                .append(e.date())
+                .append(": ").append(e.name())
+                .append(" - ").append(e.description())
+                .append("\n"));
+
+        if (!summary.trend().isEmpty()) {
+            context.append("\nTendencia frente al periodo anterior:\n");
+            summary.trend().forEach((emotion, delta) ->
+                    context.append("- ").append(emotion).append(": ").append(delta > 0 ? "+" : "").append(delta).append("\n"));
+        }
 
         return originalMessage + context.toString();
     }
@@ -89,6 +107,7 @@ public class ChatBotController {
         private String message;
         private List<ChatMessage> history;
         private UUID userId;
+        private UUID conversationId; // opcional: conversación guardada en el servidor
 
         // Getters y setters
         public String getMessage() { return message; }
@@ -97,5 +116,7 @@ public class ChatBotController {
         public void setHistory(List<ChatMessage> history) { this.history = history; }
         public UUID getUserId() { return userId; }
         public void setUserId(UUID userId) { this.userId = userId; }
+        public UUID getConversationId() { return conversationId; }
+        public void setConversationId(UUID conversationId) { this.conversationId = conversationId; }
     }
 }
\ No newline at end of file
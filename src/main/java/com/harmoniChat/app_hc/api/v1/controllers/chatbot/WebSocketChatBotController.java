@@ -1,6 +1,8 @@
 package com.harmoniChat.app_hc.api.v1.controllers.chatbot;
 
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
 import com.harmoniChat.app_hc.entities_repositories_and_services.chatbot.ChatMessage;
+import com.harmoniChat.app_hc.entities_repositories_and_services.chatbot.ChatbotConversationService;
 import com.harmoniChat.app_hc.entities_repositories_and_services.chatbot.GeminiChatService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -11,9 +13,12 @@ import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Controller
 public class WebSocketChatBotController {
@@ -21,11 +26,14 @@ public class WebSocketChatBotController {
 
     private final SimpMessagingTemplate messagingTemplate;
     private final GeminiChatService chatService;
+    private final ChatbotConversationService conversationService;
 
     public WebSocketChatBotController(SimpMessagingTemplate messagingTemplate,
-                                      GeminiChatService chatService) {
+                                      GeminiChatService chatService,
+                                      ChatbotConversationService conversationService) {
         this.messagingTemplate = messagingTemplate;
         this.chatService = chatService;
+        this.conversationService = conversationService;
     }
 
     @MessageMapping("/chatbot.send")
@@ -38,21 +46,25 @@ public class WebSocketChatBotController {
 
             logger.info("Message received: {}", request.getContent());
 
-            // Procesar con Gemini
-            String botResponse = chatService.getChatResponse(
-                    request.getContent(),
-                    request.getConversationHistory() != null ? request.getConversationHistory() : List.of()
-            );
+            if (request.isStream()) {
+                streamResponse(request);
+                return;
+            }
 
-            // Enviar respuesta a la familia
-            ChatBotResponse response = new ChatBotResponse(
-                    botResponse,
-                    request.getFamilyId()
-            );
+            // Procesar con Gemini sin bloquear el carril del chatbot; la respuesta se envía
+            // a la familia cuando llega
+            Mono<String> reply = request.getConversationId() != null
+                    // Conversación guardada en el servidor, compartida por la familia
+                    ? conversationService.reply(request.getConversationId(), request.getFamilyId(),
+                            request.getContent(), request.getContent())
+                    : chatService.chatResponse(request.getContent(), history(request));
 
-            messagingTemplate.convertAndSend(
-                    "/topic/family." + request.getFamilyId() + ".chatbot",
-                    response
+            reply.contextWrite(OutboundApiGovernor.forFamily(request.getFamilyId())).subscribe(
+                    botResponse -> messagingTemplate.convertAndSend(
+                            "/topic/family." + request.getFamilyId() + ".chatbot",
+                            new ChatBotResponse(botResponse, request.getFamilyId())
+                    ),
+                    error -> logger.error("Error procesando mensaje: ", error)
             );
 
         } catch (Exception e) {
@@ -60,6 +72,42 @@ public class WebSocketChatBotController {
         }
     }
 
+    /**
+     * Envía la respuesta por fragmentos a medida que Gemini la genera. Cada fragmento lleva
+     * el id del stream y un seq creciente; el último frame tiene {@code done = true} y la
+     * respuesta completa. La suscripción no bloquea el hilo del carril del chatbot.
+     */
+    private void streamResponse(ChatBotRequest request) {
+        String destination = "/topic/family." + request.getFamilyId() + ".chatbot";
+        UUID streamId = UUID.randomUUID();
+        AtomicLong seq = new AtomicLong();
+        StringBuilder fullText = new StringBuilder();
+
+        Flux<String> chunks = request.getConversationId() != null
+                ? conversationService.streamReply(request.getConversationId(), request.getFamilyId(),
+                        request.getContent(), request.getContent())
+                : chatService.streamChatResponse(request.getContent(), history(request));
+
+        chunks.contextWrite(OutboundApiGovernor.forFamily(request.getFamilyId())).subscribe(
+                        chunk -> {
+                            fullText.append(chunk);
+                            messagingTemplate.convertAndSend(destination, new ChatBotChunk(
+                                    streamId, request.getFamilyId(), seq.incrementAndGet(), chunk, false, false));
+                        },
+                        error -> {
+                            logger.error("Error en la respuesta en streaming: ", error);
+                            messagingTemplate.convertAndSend(destination, new ChatBotChunk(
+                                    streamId, request.getFamilyId(), seq.incrementAndGet(), fullText.toString(), true, true));
+                        },
+                        () -> messagingTemplate.convertAndSend(destination, new ChatBotChunk(
+                                streamId, request.getFamilyId(), seq.incrementAndGet(), fullText.toString(), true, false))
+                );
+    }
+
+    private static List<ChatMessage> history(ChatBotRequest request) {
+        return request.getConversationHistory() != null ? request.getConversationHistory() : List.of();
+    }
+
     @Data
     @AllArgsConstructor
     @NoArgsConstructor
@@ -67,6 +115,30 @@ public class WebSocketChatBotController {
         private String content;
         private UUID familyId;
         private List<ChatMessage> conversationHistory;
+        private boolean stream; // opcional: recibir la respuesta por fragmentos
+        private UUID conversationId; // opcional: historial guardado en el servidor en lugar de conversationHistory
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class ChatBotChunk {
+        private UUID streamId;
+        private UUID familyId;
+        private long seq;
+        private String content; // fragmento; en el frame final, la respuesta completa
+        private boolean done;
+        private boolean error;
+        private long timestamp;
+
+        public ChatBotChunk(UUID streamId, UUID familyId, long seq, String content, boolean done, boolean error) {
+            this.streamId = streamId;
+            this.familyId = familyId;
+            this.seq = seq;
+            this.content = content;
+            this.done = done;
+            this.error = error;
+            this.timestamp = System.currentTimeMillis();
+        }
     }
 
     @Data
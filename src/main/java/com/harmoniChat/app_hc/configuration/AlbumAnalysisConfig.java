@@ -1,9 +1,11 @@
 package com.harmoniChat.app_hc.configuration;
 
-import com.harmoniChat.app_hc.entities_repositories_and_services.album.AlbumGroupingService;
+import com.harmoniChat.app_hc.entities_repositories_and_services.album.AlbumGroupingStrategy;
 import com.harmoniChat.app_hc.entities_repositories_and_services.album.ImageAnalysisService;
+import com.harmoniChat.app_hc.entities_repositories_and_services.album.TagIndex;
 import com.harmoniChat.app_hc.entities_repositories_and_services.album.TextAnalysisService;
 import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -19,7 +21,7 @@ public class AlbumAnalysisConfig {
 
     private final ImageAnalysisService imageAnalysisService;
     private final TextAnalysisService textAnalysisService;
-    private final AlbumGroupingService groupingService;
+    private final List<AlbumGroupingStrategy> groupingStrategies;
 
     @Value("${harmonichat.album.min-posts-per-album}")
     private int minPostsPerAlbum;
@@ -27,7 +29,23 @@ public class AlbumAnalysisConfig {
     @Value("${harmonichat.album.max-posts-to-analyze}")
     private int maxPostsToAnalyze;
 
-    public Map<String, List<Post>> analyzeAndGroupPosts(List<Post> posts) {
+    // local (en proceso, sin llamadas externas) o gemini
+    @Value("${harmonichat.album.grouping.strategy:local}")
+    private String groupingStrategy;
+
+    // Estrategia opcional que se aplica después para agregar álbumes que la principal no encontró
+    @Value("${harmonichat.album.grouping.refinement:}")
+    private String groupingRefinement;
+
+    @PostConstruct
+    void validateGroupingStrategies() {
+        strategy(groupingStrategy);
+        if (!groupingRefinement.isBlank()) {
+            strategy(groupingRefinement);
+        }
+    }
+
+    public Map<String, List<Post>> analyzeAndGroupPosts(UUID familyId, List<Post> posts) {
         // Filtro estricto: solo incluir posts con imágenes
         List<Post> postsWithImages = posts.stream()
                 .filter(post -> post.getFilesURL() != null && !post.getFilesURL().isBlank())
@@ -36,30 +54,43 @@ public class AlbumAnalysisConfig {
         log.info("Analyzing {} posts for album creation (min posts per album: {})",
                 postsWithImages.size(), minPostsPerAlbum);
 
-        // Análisis separado
-        Map<String, List<Post>> imageGroups = imageAnalysisService.analyzeImages(postsWithImages, maxPostsToAnalyze);
-        Map<String, List<Post>> textGroups = textAnalysisService.analyzeTexts(postsWithImages, maxPostsToAnalyze);
-        Map<String, List<Post>> mergedGroups = mergeGroups(imageGroups, textGroups);
+        // Ambos análisis alimentan el mismo índice, así la unión de etiquetas no copia listas
+        TagIndex tagIndex = new TagIndex(postsWithImages);
+        imageAnalysisService.analyzeImages(postsWithImages, maxPostsToAnalyze, tagIndex);
+        textAnalysisService.analyzeTexts(postsWithImages, maxPostsToAnalyze, tagIndex);
 
         // Filtro: eliminar grupos incoherentes (menos de 3 posts o con demasiada dispersión temática)
-        Map<String, List<Post>> validMergedGroups = mergedGroups.entrySet().stream()
-                .filter(e -> e.getValue().size() >= minPostsPerAlbum)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        Map<String, List<Post>> validMergedGroups = tagIndex.groupsWithAtLeast(minPostsPerAlbum);
+
+        return groupIntoAlbums(familyId, validMergedGroups);
+    }
+
+    private Map<String, List<Post>> groupIntoAlbums(UUID familyId, Map<String, List<Post>> tagGroups) {
+        Map<String, List<Post>> albums = new LinkedHashMap<>(strategy(groupingStrategy).group(familyId, tagGroups, minPostsPerAlbum));
+        if (groupingRefinement.isBlank() || groupingRefinement.equals(groupingStrategy)) {
+            return albums;
+        }
+
+        // Del refinamiento solo se agregan los álbumes con un título o unos posts nuevos
+        strategy(groupingRefinement).group(familyId, tagGroups, minPostsPerAlbum).forEach((title, posts) -> {
+            Set<UUID> postIds = postIds(posts);
+            boolean known = albums.keySet().stream().anyMatch(title::equalsIgnoreCase)
+                    || albums.values().stream().anyMatch(existing -> postIds(existing).equals(postIds));
+            if (!known) {
+                albums.put(title, posts);
+            }
+        });
+        return albums;
+    }
 
-        return groupingService.groupPostsIntoSuggestedAlbums(validMergedGroups, minPostsPerAlbum);
+    private AlbumGroupingStrategy strategy(String name) {
+        return groupingStrategies.stream()
+                .filter(strategy -> strategy.name().equalsIgnoreCase(name.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Estrategia de agrupación desconocida: " + name));
     }
 
-    private Map<String, List<Post>> mergeGroups(
-            Map<String, List<Post>> imageGroups,
-            Map<String, List<Post>> textGroups) {
-
-        Map<String, List<Post>> merged = new HashMap<>(imageGroups);
-        textGroups.forEach((key, value) ->
-                merged.merge(key, value, (oldVal, newVal) -> {
-                    Set<Post> combined = new HashSet<>(oldVal);
-                    combined.addAll(newVal);
-                    return new ArrayList<>(combined);
-                }));
-        return merged;
+    private static Set<UUID> postIds(List<Post> posts) {
+        return posts.stream().map(Post::getId).collect(Collectors.toSet());
     }
 }
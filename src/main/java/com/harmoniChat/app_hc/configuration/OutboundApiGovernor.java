@@ -0,0 +1,470 @@
+package com.harmoniChat.app_hc.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Límite compartido para las llamadas salientes a las APIs de IA (Gemini, Azure Vision y
+ * Azure Text Analytics), así la generación de álbumes de una familia no agota las cuotas de
+ * todos.
+ *
+ * <p>Cada proveedor tiene su propio token bucket (peticiones por segundo con ráfaga), un
+ * máximo de llamadas en curso y un circuit breaker: tras {@code failure-threshold} fallos
+ * seguidos (429, 5xx o errores de red) se abre durante {@code open-duration} y las llamadas se
+ * rechazan sin salir; después deja pasar una sola petición de prueba (half-open) que decide
+ * si se cierra o vuelve a abrirse. Las peticiones en espera se atienden por turnos entre
+ * familias, no por orden de llegada.</p>
+ *
+ * <p>Las llamadas reactivas toman la familia del contexto de Reactor ({@link #forFamily});
+ * las bloqueantes la reciben como parámetro. Métricas: {@code outbound.in_flight},
+ * {@code outbound.queued}, {@code outbound.circuit.state}, {@code outbound.queue.wait} y
+ * {@code outbound.rejected}, todas con la etiqueta {@code provider}.</p>
+ */
+@Slf4j
+@Component
+public class OutboundApiGovernor {
+
+    public enum Provider { GEMINI, AZURE_VISION, AZURE_TEXT }
+
+    /**
+     * Límites de un proveedor. Con {@code requestsPerSecond <= 0} no hay límite de tasa.
+     */
+    public record Limits(double requestsPerSecond, int burst, int maxInFlight) {}
+
+    private static final String FAMILY_CONTEXT_KEY = OutboundApiGovernor.class.getName() + ".family";
+    private static final String SHARED_FAMILY = "shared";
+    private static final Limits UNLIMITED = new Limits(0, 0, Integer.MAX_VALUE);
+
+    private final Map<Provider, Gate> gates = new EnumMap<>(Provider.class);
+    private final ScheduledExecutorService scheduler;
+    private final MeterRegistry meterRegistry;
+    private final Duration queueTimeout;
+
+    @Autowired
+    public OutboundApiGovernor(
+            MeterRegistry meterRegistry,
+            @Value("${harmonichat.outbound.gemini.requests-per-second:5}") double geminiRate,
+            @Value("${harmonichat.outbound.gemini.burst:10}") int geminiBurst,
+            @Value("${harmonichat.outbound.gemini.max-in-flight:20}") int geminiInFlight,
+            @Value("${harmonichat.outbound.azure-vision.requests-per-second:10}") double visionRate,
+            @Value("${harmonichat.outbound.azure-vision.burst:10}") int visionBurst,
+            @Value("${harmonichat.outbound.azure-vision.max-in-flight:8}") int visionInFlight,
+            @Value("${harmonichat.outbound.azure-text.requests-per-second:10}") double textRate,
+            @Value("${harmonichat.outbound.azure-text.burst:10}") int textBurst,
+            @Value("${harmonichat.outbound.azure-text.max-in-flight:8}") int textInFlight,
+            @Value("${harmonichat.outbound.max-queued:500}") int maxQueued,
+            @Value("${harmonichat.outbound.queue-timeout:30s}") Duration queueTimeout,
+            @Value("${harmonichat.outbound.failure-threshold:5}") int failureThreshold,
+            @Value("${harmonichat.outbound.open-duration:30s}") Duration openDuration) {
+        this(meterRegistry, Map.of(
+                        Provider.GEMINI, new Limits(geminiRate, geminiBurst, geminiInFlight),
+                        Provider.AZURE_VISION, new Limits(visionRate, visionBurst, visionInFlight),
+                        Provider.AZURE_TEXT, new Limits(textRate, textBurst, textInFlight)),
+                maxQueued, queueTimeout, failureThreshold, openDuration);
+    }
+
+    /**
+     * Los proveedores que no aparecen en {@code limits} quedan sin límite.
+     */
+    public OutboundApiGovernor(MeterRegistry meterRegistry, Map<Provider, Limits> limits, int maxQueued,
+                               Duration queueTimeout, int failureThreshold, Duration openDuration) {
+        this.meterRegistry = meterRegistry;
+        this.queueTimeout = queueTimeout;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("outbound-governor").daemon(true).factory());
+
+        for (Provider provider : Provider.values()) {
+            gates.put(provider, new Gate(provider, limits.getOrDefault(provider, UNLIMITED), maxQueued, failureThreshold, openDuration));
+        }
+    }
+
+    /**
+     * Contexto de Reactor que identifica a la familia de las llamadas reactivas posteriores.
+     */
+    public static Context forFamily(Object familyId) {
+        return Context.of(FAMILY_CONTEXT_KEY, familyId == null ? SHARED_FAMILY : familyId.toString());
+    }
+
+    /**
+     * Ejecuta la llamada reactiva cuando el proveedor tiene cupo. Cada suscripción (también
+     * los reintentos) pide su propio permiso.
+     */
+    public <T> Mono<T> call(Provider provider, Supplier<? extends Mono<T>> call) {
+        Gate gate = gates.get(provider);
+        return Mono.deferContextual(context -> acquire(gate, familyOf(context)))
+                .flatMap(permit -> call.get()
+                        .doOnError(error -> permit.failed(isProviderFailure(error)))
+                        .doFinally(signal -> permit.release()));
+    }
+
+    /**
+     * Igual que {@link #call}, para respuestas por fragmentos; el permiso se libera al terminar
+     * el stream.
+     */
+    public <T> Flux<T> stream(Provider provider, Supplier<? extends Flux<T>> call) {
+        Gate gate = gates.get(provider);
+        return Mono.deferContextual(context -> acquire(gate, familyOf(context)))
+                .flatMapMany(permit -> call.get()
+                        .doOnError(error -> permit.failed(isProviderFailure(error)))
+                        .doFinally(signal -> permit.release()));
+    }
+
+    /**
+     * Variante bloqueante para los clientes con RestTemplate. Espera como mucho
+     * {@code queue-timeout} a que haya cupo.
+     */
+    public <T> T execute(Provider provider, Object familyId, Supplier<T> call) {
+        Gate gate = gates.get(provider);
+        CompletableFuture<Permit> pending = gate.acquire(familyId == null ? SHARED_FAMILY : familyId.toString());
+
+        Permit permit;
+        try {
+            permit = pending.get(queueTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            abandon(pending);
+            throw gate.reject("timeout");
+        } catch (InterruptedException e) {
+            abandon(pending);
+            Thread.currentThread().interrupt();
+            throw gate.reject("interrupted");
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            permit.failed(isProviderFailure(e));
+            throw e;
+        } finally {
+            permit.release();
+        }
+    }
+
+    private Mono<Permit> acquire(Gate gate, String family) {
+        return Mono.defer(() -> {
+            CompletableFuture<Permit> pending = gate.acquire(family);
+            return Mono.fromFuture(pending, true)
+                    .doOnCancel(() -> abandon(pending))
+                    .timeout(queueTimeout)
+                    .onErrorMap(TimeoutException.class, e -> gate.reject("timeout"));
+        });
+    }
+
+    // Si el permiso llegó justo cuando se dejaba de esperar, se devuelve
+    private static void abandon(CompletableFuture<Permit> pending) {
+        pending.cancel(false);
+        pending.thenAccept(Permit::release);
+    }
+
+    private static String familyOf(ContextView context) {
+        return context.getOrDefault(FAMILY_CONTEXT_KEY, SHARED_FAMILY);
+    }
+
+    /**
+     * Errores que indican un problema del proveedor y cuentan para el circuit breaker. Los 4xx
+     * (salvo 429) son errores de la petición y no lo abren.
+     */
+    static boolean isProviderFailure(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return isProviderStatus(response.getStatusCode().value());
+        }
+        if (error instanceof RestClientResponseException response) {
+            return isProviderStatus(response.getStatusCode().value());
+        }
+        return error instanceof WebClientRequestException
+                || error instanceof ResourceAccessException
+                || error instanceof IOException
+                || error instanceof TimeoutException;
+    }
+
+    private static boolean isProviderStatus(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Rechazo sin llamar al proveedor: circuito abierto, cola llena o tiempo de espera agotado.
+     */
+    @Getter
+    public static class RejectedException extends RuntimeException {
+        private final Provider provider;
+        private final String reason;
+
+        public RejectedException(Provider provider, String reason) {
+            super("Llamada a " + provider + " rechazada (" + reason + ")");
+            this.provider = provider;
+            this.reason = reason;
+        }
+    }
+
+    private enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private record Waiter(String family, CompletableFuture<Permit> future, long enqueuedAt) {}
+
+    private static final class Permit {
+        private final Gate gate;
+        private final boolean probe;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean failed;
+
+        private Permit(Gate gate, boolean probe) {
+            this.gate = gate;
+            this.probe = probe;
+        }
+
+        void failed(boolean providerFailure) {
+            if (providerFailure) {
+                failed = true;
+            }
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                gate.release(this);
+            }
+        }
+    }
+
+    /**
+     * Estado de un proveedor. Todo se modifica dentro del monitor del objeto; los futuros se
+     * completan fuera de él.
+     */
+    private final class Gate {
+        private final Provider provider;
+        private final Limits limits;
+        private final int maxQueued;
+        private final int failureThreshold;
+        private final long openNanos;
+        private final Timer queueWait;
+
+        // Cola por familia y turno de atención entre familias
+        private final Map<String, ArrayDeque<Waiter>> waiting = new HashMap<>();
+        private final ArrayDeque<String> turns = new ArrayDeque<>();
+        private int queued;
+        private int inFlight;
+
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private boolean refillScheduled;
+
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openUntil;
+
+        private Gate(Provider provider, Limits limits, int maxQueued, int failureThreshold, Duration openDuration) {
+            this.provider = provider;
+            this.limits = limits;
+            this.maxQueued = maxQueued;
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openDuration.toNanos();
+            this.tokens = limits.burst();
+
+            String tag = provider.name().toLowerCase();
+            this.queueWait = Timer.builder("outbound.queue.wait").tag("provider", tag)
+                    .publishPercentiles(0.5, 0.95).register(meterRegistry);
+            Gauge.builder("outbound.in_flight", this, gate -> gate.inFlight).tag("provider", tag).register(meterRegistry);
+            Gauge.builder("outbound.queued", this, gate -> gate.queued).tag("provider", tag).register(meterRegistry);
+            Gauge.builder("outbound.circuit.state", this, gate -> gate.state.ordinal())
+                    .description("0 cerrado, 1 half-open, 2 abierto")
+                    .tag("provider", tag).register(meterRegistry);
+        }
+
+        CompletableFuture<Permit> acquire(String family) {
+            CompletableFuture<Permit> future = new CompletableFuture<>();
+            synchronized (this) {
+                if (state == State.HALF_OPEN || (state == State.OPEN && System.nanoTime() - openUntil < 0)) {
+                    return CompletableFuture.failedFuture(reject("circuit_open"));
+                }
+                // La cola solo limita a quien tendría que esperar
+                if (queued >= maxQueued && !canGrantNow()) {
+                    return CompletableFuture.failedFuture(reject("queue_full"));
+                }
+
+                Waiter waiter = new Waiter(family, future, System.nanoTime());
+                waiting.computeIfAbsent(family, key -> {
+                    turns.addLast(key);
+                    return new ArrayDeque<>();
+                }).addLast(waiter);
+                queued++;
+            }
+
+            future.whenComplete((permit, error) -> {
+                if (future.isCancelled()) {
+                    remove(family, future);
+                }
+            });
+            dispatch();
+            return future;
+        }
+
+        private synchronized void remove(String family, CompletableFuture<Permit> future) {
+            ArrayDeque<Waiter> queue = waiting.get(family);
+            if (queue != null && queue.removeIf(waiter -> waiter.future() == future)) {
+                queued--;
+                if (queue.isEmpty()) {
+                    waiting.remove(family);
+                    turns.remove(family);
+                }
+            }
+        }
+
+        void release(Permit permit) {
+            synchronized (this) {
+                inFlight--;
+                if (permit.failed) {
+                    consecutiveFailures++;
+                    if (permit.probe || consecutiveFailures >= failureThreshold) {
+                        open();
+                    }
+                } else {
+                    consecutiveFailures = 0;
+                    if (permit.probe) {
+                        state = State.CLOSED;
+                        log.info("Circuito de {} cerrado de nuevo", provider);
+                    }
+                }
+            }
+            dispatch();
+        }
+
+        private void open() {
+            if (state != State.OPEN) {
+                log.warn("Circuito de {} abierto tras {} fallos seguidos", provider, consecutiveFailures);
+            }
+            state = State.OPEN;
+            openUntil = System.nanoTime() + openNanos;
+            consecutiveFailures = 0;
+        }
+
+        private void dispatch() {
+            List<Map.Entry<Waiter, Permit>> granted = new ArrayList<>();
+            List<Waiter> rejected = new ArrayList<>();
+
+            synchronized (this) {
+                refill();
+                while (queued > 0 && inFlight < limits.maxInFlight()) {
+                    long now = System.nanoTime();
+                    if (state == State.HALF_OPEN || (state == State.OPEN && now - openUntil < 0)) {
+                        // Con el circuito abierto no tiene sentido seguir esperando
+                        while (queued > 0) {
+                            rejected.add(nextWaiter());
+                        }
+                        break;
+                    }
+                    if (limits.requestsPerSecond() > 0 && tokens < 1) {
+                        scheduleRefill();
+                        break;
+                    }
+
+                    boolean probe = state == State.OPEN;
+                    if (probe) {
+                        state = State.HALF_OPEN;
+                        log.info("Circuito de {} en prueba (half-open)", provider);
+                    }
+                    tokens--;
+                    inFlight++;
+                    granted.add(Map.entry(nextWaiter(), new Permit(this, probe)));
+                }
+            }
+
+            granted.forEach(grant -> {
+                Waiter waiter = grant.getKey();
+                queueWait.record(System.nanoTime() - waiter.enqueuedAt(), TimeUnit.NANOSECONDS);
+                if (!waiter.future().complete(grant.getValue())) {
+                    grant.getValue().release();
+                }
+            });
+            rejected.forEach(waiter -> waiter.future().completeExceptionally(reject("circuit_open")));
+        }
+
+        private boolean canGrantNow() {
+            refill();
+            return queued == 0 && inFlight < limits.maxInFlight()
+                    && (limits.requestsPerSecond() <= 0 || tokens >= 1);
+        }
+
+        // Siguiente petición de la familia a la que le toca el turno
+        private Waiter nextWaiter() {
+            String family = turns.pollFirst();
+            ArrayDeque<Waiter> queue = waiting.get(family);
+            Waiter waiter = queue.pollFirst();
+            queued--;
+            if (queue.isEmpty()) {
+                waiting.remove(family);
+            } else {
+                turns.addLast(family);
+            }
+            return waiter;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            if (limits.requestsPerSecond() > 0) {
+                double elapsedSeconds = (now - lastRefill) / 1_000_000_000.0;
+                tokens = Math.min(limits.burst(), tokens + elapsedSeconds * limits.requestsPerSecond());
+            }
+            lastRefill = now;
+        }
+
+        private void scheduleRefill() {
+            if (refillScheduled) {
+                return;
+            }
+            refillScheduled = true;
+            long delayNanos = (long) Math.ceil((1 - tokens) / limits.requestsPerSecond() * 1_000_000_000L);
+            scheduler.schedule(() -> {
+                synchronized (this) {
+                    refillScheduled = false;
+                }
+                dispatch();
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        RejectedException reject(String reason) {
+            Counter.builder("outbound.rejected")
+                    .tag("provider", provider.name().toLowerCase())
+                    .tag("reason", reason)
+                    .register(meterRegistry)
+                    .increment();
+            return new RejectedException(provider, reason);
+        }
+    }
+}
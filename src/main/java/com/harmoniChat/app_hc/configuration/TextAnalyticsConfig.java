@@ -17,6 +17,10 @@ public class TextAnalyticsConfig {
     @Value("${spring.azure.text.api.key}")
     private String apiKey;
 
+    // Límite de documentos por solicitud de keyPhrases (10 en la API síncrona v3.1)
+    @Value("${spring.azure.text.documents-per-request:10}")
+    private int documentsPerRequest;
+
     @Bean
     public RestTemplate textRestTemplate() {
         return new RestTemplate();
@@ -1,21 +1,86 @@
 package com.harmoniChat.app_hc.configuration;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+/**
+ * STOMP sobre WebSocket. Con {@code harmonichat.websocket.broker.mode: simple} (por defecto)
+ * las suscripciones viven en memoria de este nodo; con {@code relay} se reenvían a un broker
+ * STOMP externo (ActiveMQ, Artemis, RabbitMQ) para que los {@code convertAndSend} de
+ * cualquier réplica lleguen a los clientes conectados en todas las demás.
+ */
+@Slf4j
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final WebSocketLaneExecutor laneExecutor;
+
+    @Value("${harmonichat.websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${harmonichat.websocket.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${harmonichat.websocket.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${harmonichat.websocket.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${harmonichat.websocket.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${harmonichat.websocket.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    @Value("${harmonichat.websocket.preserve-publish-order:true}")
+    private boolean preservePublishOrder;
+
+    public WebSocketConfig(WebSocketLaneExecutor laneExecutor) {
+        this.laneExecutor = laneExecutor;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            log.info("Usando broker STOMP externo en {}:{}", relayHost, relayPort);
+            var relay = config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode);
+            if (!relayVirtualHost.isBlank()) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+        } else if ("simple".equalsIgnoreCase(brokerMode)) {
+            config.enableSimpleBroker("/topic", "/queue");
+        } else {
+            throw new IllegalStateException("harmonichat.websocket.broker.mode inválido: " + brokerMode);
+        }
         config.setApplicationDestinationPrefixes("/app");
-        config.setPreservePublishOrder(true); // Mantener orden de mensajes
+        // Orden de entrega por sesión: solo serializa los envíos de una misma sesión, no
+        // entre sesiones. Los mensajes del chat llevan seq, así que puede desactivarse.
+        config.setPreservePublishOrder(preservePublishOrder);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.executor(laneExecutor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.executor(laneExecutor.outbound());
     }
 
     @Override
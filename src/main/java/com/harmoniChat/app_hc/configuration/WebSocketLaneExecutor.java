@@ -0,0 +1,126 @@
+package com.harmoniChat.app_hc.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ejecutores de los canales STOMP. Los mensajes entrantes se reparten por destino en carriles
+ * independientes (chatbot, chat, likes, comentarios y el resto), así una llamada lenta a
+ * Gemini no deja sin hilos al chat. Cada carril tiene hilos fijos y una cola acotada; si la
+ * cola se llena el mensaje se rechaza en lugar de acumularse.
+ *
+ * <p>Con {@code virtual-threads: true} los carriles usan hilos virtuales: el tamaño del
+ * carril sigue limitando la concurrencia, pero una espera de red no ocupa un hilo de
+ * plataforma. Se exportan las métricas {@code executor.*} con la etiqueta
+ * {@code name=websocket.<carril>}.</p>
+ */
+@Slf4j
+@Component
+public class WebSocketLaneExecutor implements Executor {
+
+    private final Map<String, ThreadPoolExecutor> lanesByPrefix = new LinkedHashMap<>();
+    private final ThreadPoolExecutor defaultLane;
+    private final ThreadPoolExecutor outbound;
+    private final List<ThreadPoolExecutor> all = new ArrayList<>();
+
+    public WebSocketLaneExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${harmonichat.websocket.executor.virtual-threads:false}") boolean virtualThreads,
+            @Value("${harmonichat.websocket.executor.queue-capacity:1000}") int queueCapacity,
+            @Value("${harmonichat.websocket.executor.chatbot-threads:8}") int chatbotThreads,
+            @Value("${harmonichat.websocket.executor.chat-threads:8}") int chatThreads,
+            @Value("${harmonichat.websocket.executor.likes-threads:4}") int likesThreads,
+            @Value("${harmonichat.websocket.executor.comments-threads:4}") int commentsThreads,
+            @Value("${harmonichat.websocket.executor.default-threads:4}") int defaultThreads,
+            @Value("${harmonichat.websocket.executor.outbound-threads:8}") int outboundThreads) {
+
+        ThreadPoolExecutor chatbot = lane("chatbot", chatbotThreads, queueCapacity, virtualThreads, meterRegistry);
+        ThreadPoolExecutor chat = lane("chat", chatThreads, queueCapacity, virtualThreads, meterRegistry);
+        ThreadPoolExecutor likes = lane("likes", likesThreads, queueCapacity, virtualThreads, meterRegistry);
+        ThreadPoolExecutor comments = lane("comments", commentsThreads, queueCapacity, virtualThreads, meterRegistry);
+
+        lanesByPrefix.put("/app/chatbot.", chatbot);
+        lanesByPrefix.put("/app/chat.", chat);
+        lanesByPrefix.put("/app/likes.", likes);
+        lanesByPrefix.put("/app/comments/", comments);
+        lanesByPrefix.put("/app/deleteComment", comments);
+
+        // CONNECT, SUBSCRIBE, heartbeats y destinos sin carril propio
+        this.defaultLane = lane("default", defaultThreads, queueCapacity, virtualThreads, meterRegistry);
+        this.outbound = lane("outbound", outboundThreads, queueCapacity, virtualThreads, meterRegistry);
+        log.info("Carriles WebSocket listos (hilos virtuales: {})", virtualThreads);
+    }
+
+    /**
+     * Ejecutor del canal de salida hacia los clientes.
+     */
+    public Executor outbound() {
+        return outbound;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        laneFor(task).execute(task);
+    }
+
+    private ThreadPoolExecutor laneFor(Runnable task) {
+        if (task instanceof MessageHandlingRunnable runnable) {
+            String destination = SimpMessageHeaderAccessor.getDestination(runnable.getMessage().getHeaders());
+            if (destination != null) {
+                for (Map.Entry<String, ThreadPoolExecutor> lane : lanesByPrefix.entrySet()) {
+                    if (destination.startsWith(lane.getKey())) {
+                        return lane.getValue();
+                    }
+                }
+            }
+        }
+        return defaultLane;
+    }
+
+    private ThreadPoolExecutor lane(String name, int threads, int queueCapacity,
+                                    boolean virtualThreads, MeterRegistry meterRegistry) {
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("ws-" + name + "-", 0).factory()
+                : Thread.ofPlatform().name("ws-" + name + "-", 0).daemon(true).factory();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                threadFactory,
+                (task, pool) -> {
+                    log.warn("Carril WebSocket '{}' saturado ({} en cola), mensaje rechazado", name, pool.getQueue().size());
+                    throw new RejectedExecutionException("Carril " + name + " saturado");
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        new ExecutorServiceMetrics(executor, "websocket." + name, Tags.empty()).bindTo(meterRegistry);
+        all.add(executor);
+        return executor;
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        all.forEach(ThreadPoolExecutor::shutdown);
+        for (ThreadPoolExecutor executor : all) {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
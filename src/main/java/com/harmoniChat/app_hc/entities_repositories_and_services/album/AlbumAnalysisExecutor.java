@@ -0,0 +1,185 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ejecutor de los análisis de imágenes y textos de los álbumes. Las llamadas a Azure son
+ * bloqueantes, así que no van al {@code ForkJoinPool} común sino a hilos virtuales (por
+ * defecto) o a un pool acotado de hilos de plataforma.
+ *
+ * <p>Cada lote tiene un plazo ({@code batch-timeout}) y cada familia un máximo de análisis a
+ * la vez ({@code per-family-concurrency}). Si el plazo vence o se interrumpe el hilo que
+ * espera el lote (trabajo abandonado), las tareas pendientes se descartan y las que están en
+ * curso se interrumpen.</p>
+ */
+@Slf4j
+@Component
+public class AlbumAnalysisExecutor {
+
+    private static final UUID NO_FAMILY = new UUID(0, 0);
+
+    private final ExecutorService executor;
+    private final int perFamilyConcurrency;
+    private final Duration batchTimeout;
+    // Se liberan solos cuando ningún lote de la familia los usa
+    private final Cache<UUID, Semaphore> permitsByFamily = Caffeine.newBuilder().weakValues().build();
+    private final MeterRegistry meterRegistry;
+
+    public AlbumAnalysisExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${harmonichat.album.analysis.virtual-threads:true}") boolean virtualThreads,
+            @Value("${harmonichat.album.analysis.pool-size:16}") int poolSize,
+            @Value("${harmonichat.album.analysis.queue-capacity:200}") int queueCapacity,
+            @Value("${harmonichat.album.analysis.per-family-concurrency:4}") int perFamilyConcurrency,
+            @Value("${harmonichat.album.analysis.batch-timeout:2m}") Duration batchTimeout) {
+        this.meterRegistry = meterRegistry;
+        this.perFamilyConcurrency = Math.max(1, perFamilyConcurrency);
+        this.batchTimeout = batchTimeout;
+
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("album-analysis-", 0).factory());
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    poolSize, poolSize, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    Thread.ofPlatform().name("album-analysis-", 0).daemon(true).factory());
+            pool.allowCoreThreadTimeOut(true);
+            new ExecutorServiceMetrics(pool, "album.analysis", Tags.empty()).bindTo(meterRegistry);
+            this.executor = pool;
+        }
+    }
+
+    /**
+     * Ejecuta las tareas de la familia y espera a que terminen, como mucho hasta el plazo
+     * del lote. Las tareas deben capturar sus propios errores; las que no lleguen a tiempo
+     * simplemente no aportan resultado.
+     */
+    public void runAll(UUID familyId, Collection<Runnable> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + batchTimeout.toNanos();
+        Semaphore familyPermits = permitsByFamily.get(familyId != null ? familyId : NO_FAMILY,
+                key -> new Semaphore(perFamilyConcurrency));
+        Queue<Runnable> pending = new ConcurrentLinkedQueue<>(tasks);
+        List<FutureTask<Void>> workers = new ArrayList<>();
+
+        try {
+            // Cada trabajador toma un cupo de la familia y va sacando tareas de la cola del lote,
+            // así ningún hilo del pool se queda bloqueado esperando cupo
+            int wanted = Math.min(perFamilyConcurrency, tasks.size());
+            while (workers.size() < wanted && familyPermits.tryAcquire()) {
+                workers.add(startWorker(pending, familyPermits));
+            }
+            if (workers.isEmpty()) {
+                if (!familyPermits.tryAcquire(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                    throw new TimeoutException();
+                }
+                workers.add(startWorker(pending, familyPermits));
+            }
+
+            for (FutureTask<Void> worker : workers) {
+                worker.get(remaining(deadline), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            log.warn("Análisis de la familia {} cortado tras {}: {} tareas sin empezar",
+                    familyId, batchTimeout, pending.size());
+            counter("timeout").increment();
+            cancel(pending, workers);
+        } catch (InterruptedException e) {
+            log.info("Análisis de la familia {} abandonado", familyId);
+            counter("cancelled").increment();
+            cancel(pending, workers);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error en el análisis de la familia {}", familyId, e.getCause());
+            cancel(pending, workers);
+        } catch (RejectedExecutionException e) {
+            // Pool lleno: se cancela lo que alcanzó a empezar y se avisa a quien generaba
+            cancel(pending, workers);
+            throw e;
+        }
+    }
+
+    private FutureTask<Void> startWorker(Queue<Runnable> pending, Semaphore familyPermits) {
+        // El cupo se devuelve una sola vez: al terminar el trabajador, o al cancelarlo si no empezó
+        AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<Void> worker = new FutureTask<>(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Runnable task;
+                while (!Thread.currentThread().isInterrupted() && (task = pending.poll()) != null) {
+                    task.run();
+                }
+            } finally {
+                familyPermits.release();
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                if (isCancelled() && claimed.compareAndSet(false, true)) {
+                    familyPermits.release();
+                }
+            }
+        };
+
+        try {
+            executor.execute(worker);
+        } catch (RejectedExecutionException e) {
+            familyPermits.release();
+            throw e;
+        }
+        return worker;
+    }
+
+    private static void cancel(Queue<Runnable> pending, List<FutureTask<Void>> workers) {
+        pending.clear();
+        workers.forEach(worker -> worker.cancel(true));
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private Counter counter(String result) {
+        return Counter.builder("album.analysis.batches.aborted")
+                .tag("reason", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,78 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Estado de una generación automática de álbumes. Lo modifica el hilo del trabajo; hacia
+ * afuera ({@code /topic/family.{id}.albums} y el endpoint de consulta) se envía siempre una
+ * {@link Snapshot} inmutable tomada en el momento del cambio.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AlbumGenerationJob {
+
+    public enum Status {
+        QUEUED, LOADING_POSTS, ANALYZING, SAVING, COMPLETED, FAILED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED;
+        }
+    }
+
+    private final UUID id;
+    private final UUID familyId;
+    private final LocalDateTime createdAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile Integer albumsSuggested;
+    private volatile String error;
+
+    AlbumGenerationJob(UUID familyId) {
+        this.id = UUID.randomUUID();
+        this.familyId = familyId;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    /**
+     * Copia inmutable del estado actual, coherente entre sus campos.
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(id, familyId, createdAt, status, startedAt, finishedAt, albumsSuggested, error);
+    }
+
+    synchronized void advance(Status status) {
+        if (startedAt == null) {
+            startedAt = LocalDateTime.now();
+        }
+        this.status = status;
+    }
+
+    synchronized void complete(int albumsSuggested) {
+        this.albumsSuggested = albumsSuggested;
+        this.finishedAt = LocalDateTime.now();
+        this.status = Status.COMPLETED;
+    }
+
+    synchronized void fail(String error) {
+        this.error = error;
+        this.finishedAt = LocalDateTime.now();
+        this.status = Status.FAILED;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Snapshot(
+            UUID id,
+            UUID familyId,
+            LocalDateTime createdAt,
+            Status status,
+            LocalDateTime startedAt,
+            LocalDateTime finishedAt,
+            Integer albumsSuggested,
+            String error
+    ) {}
+}
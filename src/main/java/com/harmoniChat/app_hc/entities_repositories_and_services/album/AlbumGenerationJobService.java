@@ -0,0 +1,150 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generación automática de álbumes en segundo plano. El endpoint devuelve el trabajo al
+ * instante y un pool acotado lo procesa; cada familia tiene como mucho un trabajo activo (si
+ * ya hay uno, se devuelve ese mismo).
+ *
+ * <p>Cada cambio de etapa se publica en {@code /topic/family.{id}.albums}, en orden y como
+ * copia inmutable del estado, y el estado se puede consultar por id mientras está en curso
+ * (aunque dure más que {@code retention}) y hasta {@code retention} después de terminar.</p>
+ */
+@Slf4j
+@Service
+public class AlbumGenerationJobService {
+
+    private final AlbumService albumService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ThreadPoolExecutor workers;
+    private final Map<UUID, AlbumGenerationJob> activeByFamily = new ConcurrentHashMap<>();
+    private final Cache<UUID, AlbumGenerationJob> jobs;
+
+    public AlbumGenerationJobService(
+            AlbumService albumService,
+            SimpMessagingTemplate messagingTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${harmonichat.album.jobs.workers:2}") int workerCount,
+            @Value("${harmonichat.album.jobs.queue-capacity:50}") int queueCapacity,
+            @Value("${harmonichat.album.jobs.retention:1h}") Duration retention) {
+        this.albumService = albumService;
+        this.messagingTemplate = messagingTemplate;
+        this.jobs = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(retention)
+                .build();
+
+        this.workers = new ThreadPoolExecutor(
+                workerCount, workerCount, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("album-job-", 0).daemon(true).factory(),
+                (task, pool) -> {
+                    throw new RejectedExecutionException("Demasiadas generaciones de álbumes en cola");
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+        new ExecutorServiceMetrics(workers, "album.jobs", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    /**
+     * Encola la generación para la familia, o devuelve la que ya está en curso.
+     *
+     * @throws RejectedExecutionException si la cola de trabajos está llena
+     */
+    public AlbumGenerationJob submit(UUID familyId) {
+        AlbumGenerationJob job = new AlbumGenerationJob(familyId);
+        AlbumGenerationJob active = activeByFamily.putIfAbsent(familyId, job);
+        if (active != null) {
+            return active;
+        }
+
+        jobs.put(job.getId(), job);
+        // QUEUED se publica antes de que el trabajo pueda empezar, así nunca llega después de otra etapa
+        publish(job);
+        try {
+            workers.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            activeByFamily.remove(familyId, job);
+            jobs.invalidate(job.getId());
+            job.fail("Demasiadas generaciones de álbumes en cola");
+            publish(job);
+            throw e;
+        }
+        return job;
+    }
+
+    public Optional<AlbumGenerationJob> findJob(UUID jobId) {
+        AlbumGenerationJob job = jobs.getIfPresent(jobId);
+        if (job != null) {
+            return Optional.of(job);
+        }
+        // Un trabajo en curso sigue visible aunque la caché lo haya expirado o desalojado;
+        // hay como mucho uno por familia y la cola es acotada
+        return activeByFamily.values().stream()
+                .filter(active -> active.getId().equals(jobId))
+                .findFirst();
+    }
+
+    private void run(AlbumGenerationJob job) {
+        Integer suggested = null;
+        try {
+            suggested = albumService.generateAutomaticAlbums(job.getFamilyId(), status -> {
+                job.advance(status);
+                // Cada etapa renueva la retención mientras el trabajo avanza
+                jobs.put(job.getId(), job);
+                publish(job);
+            });
+        } catch (Exception e) {
+            log.error("Error en la generación de álbumes {} de la familia {}", job.getId(), job.getFamilyId(), e);
+        }
+
+        // Se libera la familia antes de marcar el final, así quien vea el trabajo terminado ya puede pedir otro
+        activeByFamily.remove(job.getFamilyId(), job);
+        if (suggested != null) {
+            job.complete(suggested);
+            log.info("Generación de álbumes {} de la familia {} terminada ({} sugeridos)",
+                    job.getId(), job.getFamilyId(), suggested);
+        } else {
+            job.fail("Error al generar los álbumes");
+        }
+        // Se reinicia la retención desde que termina
+        jobs.put(job.getId(), job);
+        publish(job);
+    }
+
+    private void publish(AlbumGenerationJob job) {
+        try {
+            messagingTemplate.convertAndSend("/topic/family." + job.getFamilyId() + ".albums", job.snapshot());
+        } catch (Exception e) {
+            log.warn("No se pudo publicar el progreso del trabajo {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            // Interrumpe los trabajos en curso; su análisis pendiente se cancela
+            workers.shutdownNow();
+        }
+    }
+}
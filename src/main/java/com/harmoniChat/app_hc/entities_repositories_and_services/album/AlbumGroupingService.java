@@ -2,37 +2,53 @@ package com.harmoniChat.app_hc.entities_repositories_and_services.album;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
 import com.harmoniChat.app_hc.entities_repositories_and_services.chatbot.GeminiChatService;
 import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class AlbumGroupingService {
+public class AlbumGroupingService implements AlbumGroupingStrategy {
 
     private final GeminiChatService geminiService;
     private final AlbumRepository albumRepository;
     private final ObjectMapper objectMapper;
 
+    private static final double MIN_TAG_MATCH_RATIO = 0.4;
+
     @Value("${harmonichat.album.grouping.priorities:location,event,person,theme}")
     private List<String> groupingPriorities;
 
     @Value("${harmonichat.album.min-confidence:0.7}")
     private double minConfidence;
 
-    @Transactional
+    @Value("${harmonichat.album.grouping.gemini-timeout:1m}")
+    private Duration geminiTimeout;
+
+    @Override
+    public String name() {
+        return "gemini";
+    }
+
+    @Override
+    public Map<String, List<Post>> group(UUID familyId, Map<String, List<Post>> tagGroups, int minPostsPerAlbum) {
+        return groupPostsIntoSuggestedAlbums(familyId, tagGroups, minPostsPerAlbum);
+    }
+
+    // Sin transacción: solo llama a Gemini, no necesita una conexión a la base de datos
     public Map<String, List<Post>> groupPostsIntoSuggestedAlbums(
+            UUID familyId,
             Map<String, List<Post>> rawGroups,
             int minPostsPerAlbum) {
 
@@ -40,7 +56,7 @@ public class AlbumGroupingService {
                 rawGroups.size(), minPostsPerAlbum);
 
         try {
-            Map<String, List<Post>> geminiGroups = getGeminiGroupedAlbums(rawGroups);
+            Map<String, List<Post>> geminiGroups = getGeminiGroupedAlbums(familyId, rawGroups);
             Map<String, List<Post>> filtered = filterSmallGroups(geminiGroups, minPostsPerAlbum);
             Map<String, List<Post>> finalGroups = filtered;
 
@@ -52,10 +68,19 @@ public class AlbumGroupingService {
         }
     }
 
-    @Retryable(maxAttempts = 3, backoff = @Backoff(delay = 1000))
-    private Map<String, List<Post>> getGeminiGroupedAlbums(Map<String, List<Post>> rawGroups) {
+    /**
+     * Solo se llama desde los trabajos de generación de álbumes, que corren en su pool acotado
+     * ({@code harmonichat.album.jobs}): ese hilo espera la respuesta, con hasta tres intentos y
+     * {@code gemini-timeout} como plazo total, y ningún hilo de peticiones o de Reactor se bloquea.
+     */
+    private Map<String, List<Post>> getGeminiGroupedAlbums(UUID familyId, Map<String, List<Post>> rawGroups) {
         String prompt = buildGroupingPrompt(rawGroups.keySet());
-        String geminiResponse = geminiService.getChatResponse(prompt, null);
+        String geminiResponse = geminiService.chatResponse(prompt, List.of())
+                .retryWhen(Retry.backoff(2, Duration.ofSeconds(1)))
+                .timeout(geminiTimeout)
+                // Cada familia en su cola del límite de llamadas a Gemini
+                .contextWrite(OutboundApiGovernor.forFamily(familyId))
+                .block();
 
         System.out.println("🧠 Gemini raw response:\n" + geminiResponse);
 
@@ -154,6 +179,8 @@ public class AlbumGroupingService {
             GeminiResponse parsed = objectMapper.readValue(cleanJson, GeminiResponse.class);
 
             Map<String, List<Post>> result = new LinkedHashMap<>();
+            // Se construye una vez para todos los álbumes sugeridos
+            PostTagBitsets tagsByPost = new PostTagBitsets(originalGroups);
 
             parsed.getAlbums().stream()
                     .filter(album -> album.getConfidence() >= minConfidence)
@@ -165,27 +192,8 @@ public class AlbumGroupingService {
                     .sorted(Comparator.comparingInt(
                             a -> groupingPriorities.indexOf(a.getPriority())))
                     .forEach(album -> {
-                        // Reestructura los grupos en un mapa post -> tags
-                        Map<Post, Set<String>> tagsByPost = new HashMap<>();
-                        for (Map.Entry<String, List<Post>> entry : originalGroups.entrySet()) {
-                            String tag = entry.getKey();
-                            for (Post post : entry.getValue()) {
-                                tagsByPost.computeIfAbsent(post, k -> new HashSet<>()).add(tag);
-                            }
-                        }
-
-                        // Ahora filtramos los posts que tengan TODOS los tags del álbum sugerido
-                        List<Post> matchingPosts = tagsByPost.entrySet().stream()
-                                .filter(e -> {
-                                    Set<String> postTags = e.getValue();
-                                    long matchCount = album.getTags().stream()
-                                            .filter(postTags::contains)
-                                            .count();
-                                    double matchRatio = (double) matchCount / album.getTags().size();
-                                    return matchRatio >= 0.4;
-                                })                                .map(Map.Entry::getKey)
-                                .collect(Collectors.toList());
-
+                        // Posts con al menos el 40 % de las etiquetas del álbum sugerido
+                        List<Post> matchingPosts = tagsByPost.matching(album.getTags(), MIN_TAG_MATCH_RATIO);
 
                         if (!matchingPosts.isEmpty()) {
                             result.put(album.getName(), matchingPosts);
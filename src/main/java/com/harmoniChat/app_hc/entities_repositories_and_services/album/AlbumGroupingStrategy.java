@@ -0,0 +1,23 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Forma de convertir los grupos etiqueta → posts del análisis en álbumes sugeridos
+ * (título → posts). Se elige con {@code harmonichat.album.grouping.strategy} y, opcionalmente,
+ * se refina con otra mediante {@code harmonichat.album.grouping.refinement}.
+ */
+public interface AlbumGroupingStrategy {
+
+    String name();
+
+    /**
+     * Álbumes sugeridos con al menos {@code minPostsPerAlbum} posts. La familia sirve para
+     * repartir las llamadas externas por familia; las estrategias locales la ignoran.
+     */
+    Map<String, List<Post>> group(UUID familyId, Map<String, List<Post>> tagGroups, int minPostsPerAlbum);
+}
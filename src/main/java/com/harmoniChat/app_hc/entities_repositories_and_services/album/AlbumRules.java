@@ -0,0 +1,99 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Reglas de fechas festivas y ubicaciones que comparten la generación de álbumes y la
+ * agrupación local, para que ambas nombren y filtren los álbumes igual.
+ */
+final class AlbumRules {
+
+    private AlbumRules() {
+    }
+
+    enum Holiday {
+        CHRISTMAS("Navidad", "Celebraciones navideñas"),
+        NEW_YEAR("Año Nuevo", "Celebración de año nuevo");
+
+        private final String albumTitle;
+        private final String description;
+
+        Holiday(String albumTitle, String description) {
+            this.albumTitle = albumTitle;
+            this.description = description;
+        }
+
+        public String getAlbumTitle() {
+            return albumTitle;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    static Holiday detectHoliday(LocalDateTime date) {
+        if (date == null) return null;
+
+        LocalDate localDate = date.toLocalDate();
+        int day = localDate.getDayOfMonth();
+        Month month = localDate.getMonth();
+
+        if (month == Month.DECEMBER && day >= 20 && day <= 26) return Holiday.CHRISTMAS;
+        if ((month == Month.DECEMBER && day >= 30) || (month == Month.JANUARY && day <= 2)) return Holiday.NEW_YEAR;
+        return null;
+    }
+
+    /**
+     * Año más repetido entre los posts de la fecha festiva (el actual si no hay ninguno).
+     */
+    static int commonYear(Collection<Post> posts, Holiday holiday) {
+        return posts.stream()
+                .map(Post::getCreationDate)
+                .filter(Objects::nonNull)
+                .filter(dt -> detectHoliday(dt) == holiday)
+                .map(LocalDateTime::getYear)
+                .collect(Collectors.groupingBy(y -> y, Collectors.counting()))
+                .entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse(LocalDate.now().getYear());
+    }
+
+    /**
+     * Primera parte de la ubicación en minúsculas ("Cali, Valle del Cauca" → "cali"), o
+     * {@code null} si el post no tiene ubicación.
+     */
+    static String primaryLocation(Post post) {
+        if (post.getLocation() == null) return null;
+        String location = post.getLocation().split(",")[0].trim().toLowerCase();
+        return location.isBlank() ? null : location;
+    }
+
+    /**
+     * Ubicación que se repite al menos dos veces o en el 40 % de los posts.
+     */
+    static String dominantLocation(Collection<Post> posts) {
+        return posts.stream()
+                .map(AlbumRules::primaryLocation)
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(loc -> loc, Collectors.counting()))
+                .entrySet().stream()
+                .filter(entry -> entry.getValue() >= 2 || entry.getValue() >= posts.size() * 0.4)
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse(null);
+    }
+
+    static String capitalize(String word) {
+        return word.substring(0, 1).toUpperCase() + word.substring(1);
+    }
+}
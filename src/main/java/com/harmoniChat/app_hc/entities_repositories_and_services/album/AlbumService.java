@@ -1,6 +1,7 @@
 package com.harmoniChat.app_hc.entities_repositories_and_services.album;
 
 import com.harmoniChat.app_hc.configuration.AlbumAnalysisConfig;
+import com.harmoniChat.app_hc.entities_repositories_and_services.album.AlbumRules.Holiday;
 import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
 import com.harmoniChat.app_hc.entities_repositories_and_services.post.PostService;
 import lombok.*;
@@ -10,11 +11,13 @@ import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.Month;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -25,10 +28,12 @@ public class AlbumService {
     private final AlbumRepository albumRepository;
     private final PostService postService;
     private final AlbumAnalysisConfig albumAnalysisConfig;
+    private final TransactionTemplate transactionTemplate;
 
     private static final double TITLE_SIMILARITY_RATIO = 0.7;
     private final LevenshteinDistance levenshteinDistance = LevenshteinDistance.getDefaultInstance();
-    private final Set<Set<UUID>> createdPostSets = new HashSet<>();
+    // Grupos de posts ya creados en la generación en curso, por familia (varias familias pueden generar a la vez)
+    private final Map<UUID, Set<Set<UUID>>> createdPostSets = new ConcurrentHashMap<>();
 
     @Transactional
     public Album createManualAlbum(String title, String description, UUID familyId, Set<UUID> postIds) {
@@ -50,21 +55,26 @@ public class AlbumService {
         return albumRepository.save(album);
     }
 
-    @Transactional
-    public void generateAutomaticAlbums(UUID familyId) {
-        createdPostSets.clear();
-
+    /**
+     * Genera los álbumes automáticos de la familia e informa cada etapa a {@code progress}.
+     * El análisis (Azure y Gemini) corre sin transacción; solo la escritura de los álbumes
+     * ocupa una conexión a la base de datos. Devuelve la cantidad de álbumes sugeridos.
+     */
+    public int generateAutomaticAlbums(UUID familyId, Consumer<AlbumGenerationJob.Status> progress) {
+        progress.accept(AlbumGenerationJob.Status.LOADING_POSTS);
         List<Post> familyPosts = postService.findAllByFamilyId(familyId);
-        Map<String, List<Post>> suggestedGroups = albumAnalysisConfig.analyzeAndGroupPosts(familyPosts);
+
+        progress.accept(AlbumGenerationJob.Status.ANALYZING);
+        Map<String, List<Post>> suggestedGroups = albumAnalysisConfig.analyzeAndGroupPosts(familyId, familyPosts);
 
         boolean hasChristmas = familyPosts.stream()
                 .filter(p -> p.getFilesURL() != null && !p.getFilesURL().isBlank())
-                .filter(p -> detectHoliday(p.getCreationDate()) == Holiday.CHRISTMAS)
+                .filter(p -> AlbumRules.detectHoliday(p.getCreationDate()) == Holiday.CHRISTMAS)
                 .count() >= 3;
 
         boolean hasNewYear = familyPosts.stream()
                 .filter(p -> p.getFilesURL() != null && !p.getFilesURL().isBlank())
-                .filter(p -> detectHoliday(p.getCreationDate()) == Holiday.NEW_YEAR)
+                .filter(p -> AlbumRules.detectHoliday(p.getCreationDate()) == Holiday.NEW_YEAR)
                 .count() >= 3;
 
         boolean alreadySuggestedChristmas = suggestedGroups.keySet().stream()
@@ -76,26 +86,43 @@ public class AlbumService {
         if (hasChristmas && !alreadySuggestedChristmas) {
             List<Post> christmasPosts = familyPosts.stream()
                     .filter(p -> p.getFilesURL() != null && !p.getFilesURL().isBlank())
-                    .filter(p -> detectHoliday(p.getCreationDate()) == Holiday.CHRISTMAS)
+                    .filter(p -> AlbumRules.detectHoliday(p.getCreationDate()) == Holiday.CHRISTMAS)
                     .collect(Collectors.toList());
-            suggestedGroups.put("Navidad " + extractCommonYear(christmasPosts, Holiday.CHRISTMAS), christmasPosts);
+            suggestedGroups.put("Navidad " + AlbumRules.commonYear(christmasPosts, Holiday.CHRISTMAS), christmasPosts);
         }
 
         if (hasNewYear && !alreadySuggestedNewYear) {
             List<Post> newYearPosts = familyPosts.stream()
                     .filter(p -> p.getFilesURL() != null && !p.getFilesURL().isBlank())
-                    .filter(p -> detectHoliday(p.getCreationDate()) == Holiday.NEW_YEAR)
+                    .filter(p -> AlbumRules.detectHoliday(p.getCreationDate()) == Holiday.NEW_YEAR)
                     .collect(Collectors.toList());
-            suggestedGroups.put("Año Nuevo " + extractCommonYear(newYearPosts, Holiday.NEW_YEAR), newYearPosts);
+            suggestedGroups.put("Año Nuevo " + AlbumRules.commonYear(newYearPosts, Holiday.NEW_YEAR), newYearPosts);
         }
 
-        suggestedGroups.forEach((title, posts) -> {
+        progress.accept(AlbumGenerationJob.Status.SAVING);
+        transactionTemplate.executeWithoutResult(status -> {
+            createdPostSets.put(familyId, ConcurrentHashMap.newKeySet());
             try {
-                processAlbumSuggestion(familyId, title, posts);
-            } catch (Exception e) {
-                log.error("Error processing album '{}'", title, e);
+                // Los posts del análisis quedaron fuera de la sesión; se usan las instancias gestionadas
+                Map<UUID, Post> managedPosts = postService.findAllByFamilyId(familyId).stream()
+                        .collect(Collectors.toMap(Post::getId, Function.identity()));
+
+                suggestedGroups.forEach((title, posts) -> {
+                    try {
+                        List<Post> managed = posts.stream()
+                                .map(post -> managedPosts.get(post.getId()))
+                                .filter(Objects::nonNull)
+                                .collect(Collectors.toList());
+                        processAlbumSuggestion(familyId, title, managed);
+                    } catch (Exception e) {
+                        log.error("Error processing album '{}'", title, e);
+                    }
+                });
+            } finally {
+                createdPostSets.remove(familyId);
             }
         });
+        return suggestedGroups.size();
     }
 
     private void processAlbumSuggestion(UUID familyId, String suggestedTitle, List<Post> suggestedPosts) {
@@ -156,7 +183,7 @@ public class AlbumService {
         Set<UUID> postIds = posts.stream().map(Post::getId).collect(Collectors.toSet());
 
         // 1. Verificar en cache local
-        if (createdPostSets.contains(postIds)) {
+        if (createdPostSets.getOrDefault(familyId, Set.of()).contains(postIds)) {
             return true;
         }
 
@@ -206,7 +233,8 @@ public class AlbumService {
                 .build();
 
         albumRepository.save(album);
-        createdPostSets.add(filteredPosts.stream().map(Post::getId).collect(Collectors.toSet()));
+        createdPostSets.computeIfAbsent(familyId, id -> ConcurrentHashMap.newKeySet())
+                .add(filteredPosts.stream().map(Post::getId).collect(Collectors.toSet()));
         log.info("Created new album '{}' with {} posts", adjustedTitle, filteredPosts.size());
     }
 
@@ -224,12 +252,12 @@ public class AlbumService {
     private String adjustAlbumTitleBasedOnContent(String title, List<Post> posts) {
         Holiday holiday = detectHolidayForGroup(posts);
         if (holiday != null) {
-            return holiday.getAlbumTitle() + " " + extractCommonYear(posts, holiday);
+            return holiday.getAlbumTitle() + " " + AlbumRules.commonYear(posts, holiday);
         }
 
-        String location = getDominantLocation(new HashSet<>(posts));
+        String location = AlbumRules.dominantLocation(posts);
         if (location != null) {
-            return capitalize(location);
+            return AlbumRules.capitalize(location);
         }
 
         return title;
@@ -241,7 +269,7 @@ public class AlbumService {
         if (lowerTitle.contains("navidad") || lowerTitle.contains("año nuevo")) {
             return posts.stream()
                     .filter(post -> {
-                        Holiday holiday = detectHoliday(post.getCreationDate());
+                        Holiday holiday = AlbumRules.detectHoliday(post.getCreationDate());
                         if (lowerTitle.contains("navidad")) {
                             return holiday == Holiday.CHRISTMAS;
                         } else {
@@ -265,7 +293,7 @@ public class AlbumService {
         return posts.stream()
                 .map(Post::getCreationDate)
                 .filter(Objects::nonNull)
-                .map(this::detectHoliday)
+                .map(AlbumRules::detectHoliday)
                 .filter(Objects::nonNull)
                 .collect(Collectors.groupingBy(h -> h, Collectors.counting()))
                 .entrySet().stream()
@@ -274,29 +302,16 @@ public class AlbumService {
                 .orElse(null);
     }
 
-    private int extractCommonYear(List<Post> posts, Holiday holiday) {
-        return posts.stream()
-                .map(Post::getCreationDate)
-                .filter(Objects::nonNull)
-                .filter(dt -> detectHoliday(dt) == holiday)
-                .map(LocalDateTime::getYear)
-                .collect(Collectors.groupingBy(y -> y, Collectors.counting()))
-                .entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse(LocalDate.now().getYear());
-    }
-
     private Set<Post> filterPostsByTitle(String title, List<Post> posts) {
         String lowerTitle = title.toLowerCase();
 
         if (lowerTitle.contains("navidad")) {
             return posts.stream()
-                    .filter(post -> detectHoliday(post.getCreationDate()) == Holiday.CHRISTMAS)
+                    .filter(post -> AlbumRules.detectHoliday(post.getCreationDate()) == Holiday.CHRISTMAS)
                     .collect(Collectors.toSet());
         } else if (lowerTitle.contains("año nuevo")) {
             return posts.stream()
-                    .filter(post -> detectHoliday(post.getCreationDate()) == Holiday.NEW_YEAR)
+                    .filter(post -> AlbumRules.detectHoliday(post.getCreationDate()) == Holiday.NEW_YEAR)
                     .collect(Collectors.toSet());
         }
 
@@ -313,24 +328,6 @@ public class AlbumService {
                 .collect(Collectors.toSet());
     }
 
-    private String getDominantLocation(Set<Post> posts) {
-        return posts.stream()
-                .map(Post::getLocation)
-                .filter(Objects::nonNull)
-                .map(loc -> loc.split(",")[0].trim().toLowerCase())
-                .filter(loc -> !loc.isBlank())
-                .collect(Collectors.groupingBy(loc -> loc, Collectors.counting()))
-                .entrySet().stream()
-                .filter(entry -> entry.getValue() >= 2 || entry.getValue() >= posts.size() * 0.4)
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse(null);
-    }
-
-    private String capitalize(String word) {
-        return word.substring(0, 1).toUpperCase() + word.substring(1);
-    }
-
     private String getCoverImageUrl(Collection<Post> posts) {
         return posts.stream()
                 .filter(p -> p.getFilesURL() != null)
@@ -365,18 +362,6 @@ public class AlbumService {
 
         return AlbumType.FAMILIA;
     }
-    private Holiday detectHoliday(LocalDateTime date) {
-        if (date == null) return null;
-
-        LocalDate localDate = date.toLocalDate();
-        int day = localDate.getDayOfMonth();
-        Month month = localDate.getMonth();
-
-        if (month == Month.DECEMBER && day >= 20 && day <= 26) return Holiday.CHRISTMAS;
-        if ((month == Month.DECEMBER && day >= 30) || (month == Month.JANUARY && day <= 2)) return Holiday.NEW_YEAR;
-        return null;
-    }
-
     public Album addPostsToAlbum(UUID albumId, List<UUID> postIds) {
         Album album = albumRepository.findById(albumId)
                 .orElseThrow(() -> new RuntimeException("Álbum no encontrado"));
@@ -476,7 +461,10 @@ public class AlbumService {
         Set<UUID> postIds = album.getPosts().stream()
                 .map(Post::getId)
                 .collect(Collectors.toSet());
-        createdPostSets.remove(postIds);
+        Set<Set<UUID>> created = createdPostSets.get(album.getFamilyId());
+        if (created != null) {
+            created.remove(postIds);
+        }
 
         album.getPosts().clear();
         albumRepository.save(album);
@@ -521,27 +509,6 @@ public class AlbumService {
         }
     }
 
-    private enum Holiday {
-        CHRISTMAS("Navidad", "Celebraciones navideñas"),
-        NEW_YEAR("Año Nuevo", "Celebración de año nuevo");
-
-        private final String albumTitle;
-        private final String description;
-
-        Holiday(String albumTitle, String description) {
-            this.albumTitle = albumTitle;
-            this.description = description;
-        }
-
-        public String getAlbumTitle() {
-            return albumTitle;
-        }
-
-        public String getDescription() {
-            return description;
-        }
-    }
-
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -1,6 +1,8 @@
 package com.harmoniChat.app_hc.entities_repositories_and_services.album;
 
 import com.harmoniChat.app_hc.configuration.ComputerVisionConfig;
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor.Provider;
 import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,7 +13,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
-import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -21,6 +22,12 @@ public class ImageAnalysisService {
 
     private final ComputerVisionConfig visionConfig;
     private final RestTemplate restTemplate;
+    private final OutboundApiGovernor outboundGovernor;
+    private final PostAnalysisService postAnalysisService;
+    private final AlbumAnalysisExecutor analysisExecutor;
+
+    // Cambiarla invalida las etiquetas guardadas (p. ej. al cambiar de modelo, idioma o filtro)
+    static final String ANALYSIS_VERSION = "vision/v3.2;tags;es;1";
 
     // Tamaño máximo en MB para imágenes
     private static final long MAX_IMAGE_SIZE_MB = 4;
@@ -30,28 +37,40 @@ public class ImageAnalysisService {
             "jpg", "jpeg", "png", "gif", "bmp", "webp"
     );
 
-    public Map<String, List<Post>> analyzeImages(List<Post> posts, int maxPostsToAnalyze) {
-        Map<String, List<Post>> groups = new ConcurrentHashMap<>();
+    /**
+     * Agrega al índice las etiquetas de los posts analizados (hasta {@code maxPostsToAnalyze}).
+     */
+    public void analyzeImages(List<Post> posts, int maxPostsToAnalyze, TagIndex tagIndex) {
         List<Post> limitedPosts = posts.stream()
                 .limit(maxPostsToAnalyze)
+                .filter(post -> shouldProcessImage(post.getFilesURL()))
                 .collect(Collectors.toList());
 
-        List<CompletableFuture<Void>> futures = limitedPosts.stream()
-                .map(post -> CompletableFuture.runAsync(() -> analyzeSingleImage(post, groups)))
-                .collect(Collectors.toList());
+        // Solo se llama a Azure por los posts sin etiquetas guardadas para su imagen actual
+        Map<UUID, String> fingerprints = limitedPosts.stream()
+                .collect(Collectors.toMap(Post::getId, post -> PostAnalysisService.fingerprint(post.getFilesURL()),
+                        (first, second) -> first));
+        Map<UUID, List<String>> stored = postAnalysisService.findCurrent(PostAnalysis.Kind.IMAGE, fingerprints, ANALYSIS_VERSION);
+
+        List<Runnable> tasks = new ArrayList<>();
+        for (Post post : limitedPosts) {
+            List<String> tags = stored.get(post.getId());
+            if (tags != null) {
+                addTags(tags, post, tagIndex);
+            } else {
+                tasks.add(() -> analyzeSingleImage(post, fingerprints.get(post.getId()), tagIndex));
+            }
+        }
 
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        return groups;
+        if (!tasks.isEmpty()) {
+            analysisExecutor.runAll(limitedPosts.get(0).getFamilyId(), tasks);
+        }
     }
 
-    private void analyzeSingleImage(Post post, Map<String, List<Post>> groups) {
+    private void analyzeSingleImage(Post post, String fingerprint, TagIndex tagIndex) {
         try {
             String imageUrl = post.getFilesURL();
 
-            if (!shouldProcessImage(imageUrl)) {
-                return;
-            }
-
             HttpHeaders headers = new HttpHeaders();
             headers.set("Ocp-Apim-Subscription-Key", visionConfig.getApiKey());
             headers.setContentType(MediaType.APPLICATION_JSON);
@@ -62,9 +81,14 @@ public class ImageAnalysisService {
             String visionUrl = visionConfig.getEndpoint() + "/vision/v3.2/analyze?visualFeatures=Tags&language=es";
 
             log.debug("Analyzing image for post {}: {}", post.getId(), imageUrl);
-            ResponseEntity<Map> response = callAzureVisionAPI(visionUrl, request);
+            ResponseEntity<Map> response = outboundGovernor.execute(Provider.AZURE_VISION, post.getFamilyId(),
+                    () -> callAzureVisionAPI(visionUrl, request));
 
-            processVisionResponse(response, post, groups);
+            List<String> tags = processVisionResponse(response, post);
+            if (tags != null) {
+                addTags(tags, post, tagIndex);
+                postAnalysisService.store(PostAnalysis.Kind.IMAGE, post.getId(), fingerprint, ANALYSIS_VERSION, tags);
+            }
         } catch (Exception e) {
             log.error("Error analyzing image for post {}: {}", post.getId(), e.getMessage());
         }
@@ -75,29 +99,38 @@ public class ImageAnalysisService {
         return restTemplate.exchange(url, HttpMethod.POST, request, Map.class);
     }
 
-    private void processVisionResponse(ResponseEntity<Map> response, Post post, Map<String, List<Post>> groups) {
+    /**
+     * Etiquetas válidas de la respuesta, o {@code null} si la respuesta no sirve (en ese caso
+     * no se guarda nada y el post se vuelve a analizar la próxima vez).
+     */
+    private List<String> processVisionResponse(ResponseEntity<Map> response, Post post) {
         if (response.getStatusCode() != HttpStatus.OK || response.getBody() == null) {
             log.warn("Invalid response from Azure Vision for post {}", post.getId());
-            return;
+            return null;
         }
 
         try {
             List<Map<String, Object>> tags = (List<Map<String, Object>>) response.getBody().get("tags");
-            if (tags == null) return;
+            if (tags == null) return List.of();
 
-            tags.stream()
+            return tags.stream()
                     .filter(tag -> (double) tag.getOrDefault("confidence", 0.0) >= 0.7)
                     .map(tag -> ((String) tag.get("name")).toLowerCase().trim())
                     .filter(this::isValidImageTag)
-                    .forEach(tag -> {
-                        groups.computeIfAbsent(tag, k -> new ArrayList<>()).add(post);
-                        log.debug("Added tag '{}' for post {}", tag, post.getId());
-                    });
+                    .collect(Collectors.toList());
         } catch (Exception e) {
             log.error("Error processing vision response for post {}", post.getId(), e);
+            return null;
         }
     }
 
+    private void addTags(List<String> tags, Post post, TagIndex tagIndex) {
+        tags.forEach(tag -> {
+            tagIndex.add(tag, post);
+            log.debug("Added tag '{}' for post {}", tag, post.getId());
+        });
+    }
+
     private boolean shouldProcessImage(String imageUrl) {
         if (imageUrl == null || imageUrl.isBlank()) {
             log.debug("Empty image URL");
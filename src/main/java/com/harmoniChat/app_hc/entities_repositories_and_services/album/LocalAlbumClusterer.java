@@ -0,0 +1,204 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.album.AlbumRules.Holiday;
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Agrupación local y determinista, sin llamadas externas. Dos posts quedan en el mismo
+ * álbum si se publicaron dentro de {@code time-window} y comparten ubicación o tienen
+ * etiquetas parecidas (Jaccard ≥ {@code min-similarity}); los de la misma fecha festiva del
+ * mismo año siempre quedan juntos.
+ *
+ * <p>Cada grupo se nombra con las reglas de {@link AlbumService}: fecha festiva con su año
+ * si la mayoría de sus posts son de esa fecha, si no la ubicación dominante y, en último
+ * caso, la etiqueta más frecuente. Con fecha festiva o ubicación solo quedan los posts que
+ * la cumplen, y los grupos con el mismo nombre se unen (p. ej. dos viajes a Cali).</p>
+ */
+@Slf4j
+@Component
+public class LocalAlbumClusterer implements AlbumGroupingStrategy {
+
+    private final double minSimilarity;
+    private final Duration timeWindow;
+
+    public LocalAlbumClusterer(
+            @Value("${harmonichat.album.grouping.local.min-similarity:0.3}") double minSimilarity,
+            @Value("${harmonichat.album.grouping.local.time-window:3d}") Duration timeWindow) {
+        this.minSimilarity = minSimilarity;
+        this.timeWindow = timeWindow;
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    @Override
+    public Map<String, List<Post>> group(UUID familyId, Map<String, List<Post>> tagGroups, int minPostsPerAlbum) {
+        // Post sin equals: cada instancia es un post distinto, en el orden en que aparece
+        Map<Post, Set<String>> tagsByPost = new LinkedHashMap<>();
+        tagGroups.forEach((tag, posts) ->
+                posts.forEach(post -> tagsByPost.computeIfAbsent(post, k -> new HashSet<>()).add(tag)));
+        List<Post> posts = new ArrayList<>(tagsByPost.keySet());
+        List<Set<String>> tags = new ArrayList<>(tagsByPost.values());
+        int[] parent = IntStream.range(0, posts.size()).toArray();
+
+        // Solo se comparan los posts dentro de la ventana de tiempo, recorriéndolos por fecha
+        int[] byDate = IntStream.range(0, posts.size())
+                .filter(i -> posts.get(i).getCreationDate() != null)
+                .boxed()
+                .sorted(Comparator.comparing(i -> posts.get(i).getCreationDate()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        for (int a = 0; a < byDate.length; a++) {
+            LocalDateTime limit = posts.get(byDate[a]).getCreationDate().plus(timeWindow);
+            for (int b = a + 1; b < byDate.length && !posts.get(byDate[b]).getCreationDate().isAfter(limit); b++) {
+                if (related(posts.get(byDate[a]), tags.get(byDate[a]), posts.get(byDate[b]), tags.get(byDate[b]))) {
+                    union(parent, byDate[a], byDate[b]);
+                }
+            }
+        }
+
+        // Los de la misma fecha festiva del mismo año van siempre juntos
+        Map<String, Integer> firstBySeason = new HashMap<>();
+        for (int i = 0; i < posts.size(); i++) {
+            int index = i;
+            String season = holidaySeason(posts.get(i).getCreationDate());
+            if (season != null) {
+                union(parent, i, firstBySeason.computeIfAbsent(season, key -> index));
+            }
+        }
+
+        Map<Integer, List<Integer>> clusters = new LinkedHashMap<>();
+        for (int i = 0; i < posts.size(); i++) {
+            clusters.computeIfAbsent(find(parent, i), root -> new ArrayList<>()).add(i);
+        }
+
+        Map<String, Set<Post>> albums = new LinkedHashMap<>();
+        for (List<Integer> cluster : clusters.values()) {
+            List<Post> clusterPosts = cluster.stream().map(posts::get).toList();
+            Anchor anchor = anchor(clusterPosts);
+            if (anchor != null) {
+                // Como al crear el álbum: solo los posts de esa fecha festiva o ubicación
+                clusterPosts.stream()
+                        .filter(anchor.member())
+                        .forEach(post -> albums.computeIfAbsent(anchor.title(), key -> new LinkedHashSet<>()).add(post));
+            } else if (clusterPosts.size() >= minPostsPerAlbum) {
+                albums.computeIfAbsent(mostFrequentTag(cluster, tags), key -> new LinkedHashSet<>()).addAll(clusterPosts);
+            }
+        }
+
+        Map<String, List<Post>> result = new LinkedHashMap<>();
+        albums.forEach((title, albumPosts) -> {
+            if (albumPosts.size() >= minPostsPerAlbum) {
+                result.put(title, new ArrayList<>(albumPosts));
+            }
+        });
+        log.info("Local grouping created {} albums from {} posts", result.size(), posts.size());
+        return result;
+    }
+
+    private boolean related(Post a, Set<String> tagsA, Post b, Set<String> tagsB) {
+        String location = AlbumRules.primaryLocation(a);
+        if (location != null && location.equals(AlbumRules.primaryLocation(b))) {
+            return true;
+        }
+        return jaccard(tagsA, tagsB) >= minSimilarity;
+    }
+
+    static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        long shared = smaller.stream().filter(larger::contains).count();
+        return (double) shared / (a.size() + b.size() - shared);
+    }
+
+    // La fecha festiva y su temporada: el 1 de enero es del Año Nuevo que empezó en diciembre
+    private static String holidaySeason(LocalDateTime date) {
+        Holiday holiday = AlbumRules.detectHoliday(date);
+        if (holiday == null) {
+            return null;
+        }
+        int year = date.getMonth() == Month.JANUARY ? date.getYear() - 1 : date.getYear();
+        return holiday + "-" + year;
+    }
+
+    private record Anchor(String title, Predicate<Post> member) {}
+
+    /**
+     * Nombre por fecha festiva (si es la de la mayoría de los posts) o por ubicación
+     * dominante, con los posts que le corresponden; {@code null} si no hay ninguna.
+     */
+    private static Anchor anchor(List<Post> posts) {
+        Map<Holiday, Long> holidays = new HashMap<>();
+        posts.stream()
+                .map(post -> AlbumRules.detectHoliday(post.getCreationDate()))
+                .filter(Objects::nonNull)
+                .forEach(holiday -> holidays.merge(holiday, 1L, Long::sum));
+        Holiday holiday = holidays.entrySet().stream()
+                .filter(entry -> entry.getValue() * 2 > posts.size())
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(null);
+        if (holiday != null) {
+            return new Anchor(holiday.getAlbumTitle() + " " + AlbumRules.commonYear(posts, holiday),
+                    post -> AlbumRules.detectHoliday(post.getCreationDate()) == holiday);
+        }
+
+        String location = AlbumRules.dominantLocation(posts);
+        if (location != null) {
+            return new Anchor(AlbumRules.capitalize(location), post -> location.equals(AlbumRules.primaryLocation(post)));
+        }
+        return null;
+    }
+
+    // La más frecuente en el grupo; a igual frecuencia, la primera en orden alfabético
+    private static String mostFrequentTag(List<Integer> cluster, List<Set<String>> tags) {
+        Map<String, Integer> counts = new HashMap<>();
+        cluster.forEach(i -> tags.get(i).forEach(tag -> counts.merge(tag, 1, Integer::sum)));
+        return counts.entrySet().stream()
+                .min(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .map(entry -> AlbumRules.capitalize(entry.getKey()))
+                .orElse(null);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            // La raíz es siempre el post que apareció primero, así el orden es estable
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+}
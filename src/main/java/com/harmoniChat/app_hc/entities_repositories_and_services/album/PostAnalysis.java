@@ -0,0 +1,51 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "post_analysis")
+public class PostAnalysis {
+
+    public enum Kind { IMAGE, TEXT }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "post_id", nullable = false)
+    private UUID postId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Kind kind;
+
+    // SHA-256 del contenido analizado (URL de la imagen o texto compuesto)
+    @Column(nullable = false)
+    private String fingerprint;
+
+    @Column(name = "api_version", nullable = false)
+    private String apiVersion;
+
+    // Etiquetas o frases clave en JSON
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String results;
+
+    @CreationTimestamp
+    @Column(name = "creation_date")
+    private LocalDateTime creationDate;
+
+    @UpdateTimestamp
+    @Column(name = "last_modified_date")
+    private LocalDateTime lastModifiedDate;
+}
@@ -0,0 +1,28 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface PostAnalysisRepository extends JpaRepository<PostAnalysis, UUID> {
+
+    List<PostAnalysis> findByKindAndPostIdIn(PostAnalysis.Kind kind, Collection<UUID> postIds);
+
+    @Modifying
+    @Query(value = "INSERT INTO post_analysis (post_id, kind, fingerprint, api_version, results) " +
+            "VALUES (:postId, :kind, :fingerprint, :apiVersion, :results) " +
+            "ON CONFLICT (post_id, kind) DO UPDATE " +
+            "SET fingerprint = EXCLUDED.fingerprint, api_version = EXCLUDED.api_version, results = EXCLUDED.results",
+            nativeQuery = true)
+    int upsert(
+            @Param("postId") UUID postId,
+            @Param("kind") String kind,
+            @Param("fingerprint") String fingerprint,
+            @Param("apiVersion") String apiVersion,
+            @Param("results") String results);
+}
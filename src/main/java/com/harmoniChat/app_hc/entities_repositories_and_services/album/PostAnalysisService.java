@@ -0,0 +1,110 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Resultados guardados del análisis de IA de cada post (etiquetas de Azure Vision y frases
+ * clave de Azure Text Analytics), así regenerar los álbumes solo vuelve a pagar el análisis
+ * de los posts nuevos o modificados.
+ *
+ * <p>Un resultado sirve mientras coincidan la huella del contenido analizado y la versión
+ * del análisis; si cambia la imagen, el texto o la versión de la API, el post se analiza de
+ * nuevo y se reemplaza.</p>
+ */
+@Slf4j
+@Service
+public class PostAnalysisService {
+
+    private static final TypeReference<List<String>> RESULTS_TYPE = new TypeReference<>() {};
+
+    private final PostAnalysisRepository postAnalysisRepository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    public PostAnalysisService(PostAnalysisRepository postAnalysisRepository, ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry) {
+        this.postAnalysisRepository = postAnalysisRepository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Resultados vigentes de los posts indicados (post → huella actual de su contenido), con
+     * una sola consulta. Los posts que no aparecen en el resultado deben analizarse.
+     */
+    @Transactional(readOnly = true)
+    public Map<UUID, List<String>> findCurrent(PostAnalysis.Kind kind, Map<UUID, String> fingerprints, String apiVersion) {
+        Map<UUID, List<String>> current = new HashMap<>();
+        if (fingerprints.isEmpty()) {
+            return current;
+        }
+
+        for (PostAnalysis analysis : postAnalysisRepository.findByKindAndPostIdIn(kind, fingerprints.keySet())) {
+            if (analysis.getFingerprint().equals(fingerprints.get(analysis.getPostId()))
+                    && analysis.getApiVersion().equals(apiVersion)) {
+                readResults(analysis).ifPresent(results -> current.put(analysis.getPostId(), results));
+            }
+        }
+
+        counter(kind, "hit").increment(current.size());
+        counter(kind, "miss").increment(fingerprints.size() - current.size());
+        return current;
+    }
+
+    /**
+     * Guarda (o reemplaza) el resultado del análisis de un post. Un fallo al guardar no
+     * interrumpe la generación: el post simplemente se analizará otra vez la próxima vez.
+     */
+    @Transactional
+    public void store(PostAnalysis.Kind kind, UUID postId, String fingerprint, String apiVersion, List<String> results) {
+        try {
+            postAnalysisRepository.upsert(postId, kind.name(), fingerprint, apiVersion,
+                    objectMapper.writeValueAsString(results));
+        } catch (Exception e) {
+            log.warn("No se pudo guardar el análisis {} del post {}: {}", kind, postId, e.getMessage());
+        }
+    }
+
+    public static String fingerprint(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((content == null ? "" : content).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private Optional<List<String>> readResults(PostAnalysis analysis) {
+        try {
+            return Optional.of(objectMapper.readValue(analysis.getResults(), RESULTS_TYPE));
+        } catch (JsonProcessingException e) {
+            log.warn("Análisis ilegible del post {}, se analiza de nuevo", analysis.getPostId());
+            return Optional.empty();
+        }
+    }
+
+    private Counter counter(PostAnalysis.Kind kind, String result) {
+        return Counter.builder("album.analysis.cache")
+                .tag("kind", kind.name().toLowerCase())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,97 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Etiquetas de cada post como un bitset ({@code long[]}, un bit por etiqueta), construido una
+ * sola vez a partir de los grupos etiqueta → posts. Contar cuántas etiquetas de un álbum
+ * tiene un post es un AND y un {@link Long#bitCount} por palabra, sin recorrer listas ni
+ * crear conjuntos por álbum.
+ */
+class PostTagBitsets {
+
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private final List<Post> posts = new ArrayList<>();
+    private final long[][] tagsByPost;
+    private final int words;
+
+    PostTagBitsets(Map<String, List<Post>> groups) {
+        groups.keySet().forEach(tag -> tagIds.put(tag, tagIds.size()));
+        this.words = Math.max(1, (tagIds.size() + 63) >>> 6);
+
+        // Los posts en el orden en que aparecen por primera vez
+        Map<Post, Integer> postIds = new IdentityHashMap<>();
+        List<long[]> bitsets = new ArrayList<>();
+        groups.forEach((tag, groupPosts) -> {
+            int tagId = tagIds.get(tag);
+            for (Post post : groupPosts) {
+                int postId = postIds.computeIfAbsent(post, key -> {
+                    posts.add(key);
+                    bitsets.add(new long[words]);
+                    return posts.size() - 1;
+                });
+                bitsets.get(postId)[tagId >>> 6] |= 1L << tagId;
+            }
+        });
+        this.tagsByPost = bitsets.toArray(new long[0][]);
+    }
+
+    /**
+     * Posts que tienen al menos {@code minRatio} de las etiquetas del álbum. Las etiquetas
+     * que ningún post tiene cuentan en el total pero nunca coinciden, y una etiqueta repetida
+     * por Gemini cuenta tantas veces como aparece, en el total y en las coincidencias.
+     */
+    List<Post> matching(List<String> albumTags, double minRatio) {
+        if (albumTags.isEmpty()) {
+            return List.of();
+        }
+
+        long[] mask = new long[words];
+        // Apariciones de más de cada etiqueta repetida; casi siempre queda vacío
+        Map<Integer, Integer> repeats = new HashMap<>();
+        int firstWord = words;
+        int lastWord = -1;
+        for (String tag : albumTags) {
+            Integer tagId = tagIds.get(tag);
+            if (tagId != null) {
+                int word = tagId >>> 6;
+                long bit = 1L << tagId;
+                if ((mask[word] & bit) != 0) {
+                    repeats.merge(tagId, 1, Integer::sum);
+                }
+                mask[word] |= bit;
+                firstWord = Math.min(firstWord, word);
+                lastWord = Math.max(lastWord, word);
+            }
+        }
+
+        List<Post> matching = new ArrayList<>();
+        if (lastWord < 0) {
+            return matching;
+        }
+        for (int post = 0; post < tagsByPost.length; post++) {
+            // Solo las palabras donde el álbum tiene etiquetas
+            long[] postTags = tagsByPost[post];
+            int matchCount = 0;
+            for (int word = firstWord; word <= lastWord; word++) {
+                matchCount += Long.bitCount(postTags[word] & mask[word]);
+            }
+            for (Map.Entry<Integer, Integer> repeat : repeats.entrySet()) {
+                int tagId = repeat.getKey();
+                if ((postTags[tagId >>> 6] & (1L << tagId)) != 0) {
+                    matchCount += repeat.getValue();
+                }
+            }
+            if ((double) matchCount / albumTags.size() >= minRatio) {
+                matching.add(posts.get(post));
+            }
+        }
+        return matching;
+    }
+}
@@ -0,0 +1,75 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Índice invertido etiqueta → posts que alimentan a la vez el análisis de imágenes y el de
+ * textos desde varios hilos. Cada etiqueta guarda un conjunto concurrente de ids, así dos
+ * hilos que agregan posts a la misma etiqueta no se pisan y un post repetido cuenta una vez.
+ *
+ * <p>Los grupos se devuelven con los posts en el orden en que se registraron (el de la lista
+ * inicial), para que el resultado no dependa del orden de los hilos.</p>
+ */
+public class TagIndex {
+
+    private record Entry(Post post, int position) {}
+
+    private final Map<String, Set<UUID>> postIdsByTag = new ConcurrentHashMap<>();
+    private final Map<UUID, Entry> postsById = new ConcurrentHashMap<>();
+    private final AtomicInteger nextPosition = new AtomicInteger();
+
+    public TagIndex() {
+    }
+
+    public TagIndex(List<Post> posts) {
+        posts.forEach(this::register);
+    }
+
+    public void add(String tag, Post post) {
+        register(post);
+        postIdsByTag.computeIfAbsent(tag, key -> ConcurrentHashMap.newKeySet()).add(post.getId());
+    }
+
+    public Set<UUID> postIds(String tag) {
+        return Collections.unmodifiableSet(postIdsByTag.getOrDefault(tag, Set.of()));
+    }
+
+    public int tagCount() {
+        return postIdsByTag.size();
+    }
+
+    /**
+     * Grupos con al menos {@code minPosts} posts distintos. Solo se construyen las listas de
+     * los grupos que pasan el filtro.
+     */
+    public Map<String, List<Post>> groupsWithAtLeast(int minPosts) {
+        Comparator<Entry> byPosition = Comparator.comparingInt(Entry::position);
+        Map<String, List<Post>> groups = new HashMap<>();
+        postIdsByTag.forEach((tag, postIds) -> {
+            if (postIds.size() >= minPosts) {
+                groups.put(tag, postIds.stream()
+                        .map(postsById::get)
+                        .sorted(byPosition)
+                        .map(Entry::post)
+                        .toList());
+            }
+        });
+        return groups;
+    }
+
+    private void register(Post post) {
+        if (!postsById.containsKey(post.getId())) {
+            postsById.computeIfAbsent(post.getId(), id -> new Entry(post, nextPosition.getAndIncrement()));
+        }
+    }
+}
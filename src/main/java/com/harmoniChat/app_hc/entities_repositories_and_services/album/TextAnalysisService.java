@@ -1,5 +1,7 @@
 package com.harmoniChat.app_hc.entities_repositories_and_services.album;
 
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor.Provider;
 import com.harmoniChat.app_hc.configuration.TextAnalyticsConfig;
 import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
 import lombok.RequiredArgsConstructor;
@@ -14,7 +16,6 @@ import org.springframework.web.client.RestTemplate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -24,70 +25,152 @@ public class TextAnalysisService {
 
     private final TextAnalyticsConfig textConfig;
     private final RestTemplate textRestTemplate;
+    private final OutboundApiGovernor outboundGovernor;
+    private final PostAnalysisService postAnalysisService;
+    private final AlbumAnalysisExecutor analysisExecutor;
 
-    public Map<String, List<Post>> analyzeTexts(List<Post> posts, int maxPostsToAnalyze) {
-        Map<String, List<Post>> groups = new ConcurrentHashMap<>();
+    // Cambiarla invalida las frases clave guardadas
+    static final String ANALYSIS_VERSION = "text/v3.1;keyPhrases;es;1";
+
+    /**
+     * Agrega al índice las etiquetas de los posts analizados (hasta {@code maxPostsToAnalyze}).
+     */
+    public void analyzeTexts(List<Post> posts, int maxPostsToAnalyze, TagIndex tagIndex) {
         List<Post> limitedPosts = posts.stream().limit(maxPostsToAnalyze).collect(Collectors.toList());
 
-        List<CompletableFuture<Void>> futures = limitedPosts.stream()
-                .map(post -> CompletableFuture.runAsync(() -> analyzeSingleText(post, groups)))
-                .collect(Collectors.toList());
+        // La huella es del texto que se enviaría a Azure: si no cambia, se reutilizan sus frases clave
+        Map<UUID, String> fingerprints = new HashMap<>();
+        Map<UUID, String> composedTexts = new HashMap<>();
+        for (Post post : limitedPosts) {
+            String composedText = buildComposedText(post);
+            if (!composedText.isBlank()) {
+                composedTexts.putIfAbsent(post.getId(), composedText);
+                fingerprints.putIfAbsent(post.getId(), PostAnalysisService.fingerprint(composedText));
+            }
+        }
+        Map<UUID, List<String>> stored = postAnalysisService.findCurrent(PostAnalysis.Kind.TEXT, fingerprints, ANALYSIS_VERSION);
+
+        List<Post> pending = new ArrayList<>();
+        for (Post post : limitedPosts) {
+            if (!composedTexts.containsKey(post.getId())) {
+                continue;
+            }
+            List<String> keyPhrases = stored.get(post.getId());
+            if (keyPhrases != null) {
+                addKeyPhrases(keyPhrases, post, tagIndex);
+                addLocationTag(post, tagIndex);
+            } else {
+                pending.add(post);
+            }
+        }
 
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        return groups;
+        // Varios posts por solicitud, hasta el límite de documentos de Azure
+        int batchSize = Math.max(1, textConfig.getDocumentsPerRequest());
+        List<Runnable> tasks = new ArrayList<>();
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<Post> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+            tasks.add(() -> analyzeBatch(batch, composedTexts, fingerprints, tagIndex));
+        }
+
+        if (!tasks.isEmpty()) {
+            analysisExecutor.runAll(limitedPosts.get(0).getFamilyId(), tasks);
+        }
     }
 
-    private void analyzeSingleText(Post post, Map<String, List<Post>> groups) {
-        String composedText = buildComposedText(post);
-        if (composedText.isBlank()) {
-            return;
+    private void analyzeBatch(List<Post> batch, Map<UUID, String> composedTexts, Map<UUID, String> fingerprints,
+                              TagIndex tagIndex) {
+        // El id de cada documento es su posición en el lote
+        List<Map<String, Object>> documents = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            documents.add(Map.of("id", String.valueOf(i), "language", "es",
+                    "text", composedTexts.get(batch.get(i).getId())));
         }
 
         try {
-            ResponseEntity<Map> response = callAzureTextAnalytics(composedText);
-            processTextResponse(response, post, groups);
-
-            if (post.getLocation() != null && !post.getLocation().isBlank()) {
-                String locationTag = processLocation(post.getLocation()).toLowerCase();
-                if (!locationTag.isBlank()) {
-                    groups.computeIfAbsent(locationTag, k -> new ArrayList<>()).add(post);
-                    log.debug("Injected location tag '{}' for post {}", locationTag, post.getId());
+            ResponseEntity<Map> response = outboundGovernor.execute(Provider.AZURE_TEXT, batch.get(0).getFamilyId(),
+                    () -> callAzureTextAnalytics(documents));
+            Map<Post, List<String>> keyPhrasesByPost = processTextResponse(response, batch);
+
+            for (Post post : batch) {
+                List<String> keyPhrases = keyPhrasesByPost.get(post);
+                if (keyPhrases != null) {
+                    addKeyPhrases(keyPhrases, post, tagIndex);
+                    postAnalysisService.store(PostAnalysis.Kind.TEXT, post.getId(), fingerprints.get(post.getId()),
+                            ANALYSIS_VERSION, keyPhrases);
                 }
+                addLocationTag(post, tagIndex);
             }
         } catch (Exception e) {
-            log.error("Error analyzing text for post {}: {}", post.getId(), e.getMessage());
+            log.error("Error analyzing text for {} posts: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void addLocationTag(Post post, TagIndex tagIndex) {
+        if (post.getLocation() != null && !post.getLocation().isBlank()) {
+            String locationTag = processLocation(post.getLocation()).toLowerCase();
+            if (!locationTag.isBlank()) {
+                tagIndex.add(locationTag, post);
+                log.debug("Injected location tag '{}' for post {}", locationTag, post.getId());
+            }
         }
     }
 
 
     @Retryable(value = {RestClientException.class}, maxAttempts = 3, backoff = @Backoff(delay = 1000, multiplier = 2))
-    private ResponseEntity<Map> callAzureTextAnalytics(String text) {
+    private ResponseEntity<Map> callAzureTextAnalytics(List<Map<String, Object>> documents) {
         HttpHeaders headers = new HttpHeaders();
         headers.set("Ocp-Apim-Subscription-Key", textConfig.getApiKey());
         headers.setContentType(MediaType.APPLICATION_JSON);
 
-        Map<String, Object> document = Map.of(
-                "documents", List.of(Map.of("id", "1", "language", "es", "text", text))
-        );
-
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(document, headers);
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(Map.of("documents", documents), headers);
         String endpoint = textConfig.getEndpoint() + "/text/analytics/v3.1/keyPhrases";
         return textRestTemplate.exchange(endpoint, HttpMethod.POST, request, Map.class);
     }
 
-    private void processTextResponse(ResponseEntity<Map> response, Post post, Map<String, List<Post>> groups) {
-        if (response.getBody() == null || !response.getBody().containsKey("documents")) return;
+    /**
+     * Frases clave de cada post del lote según el id de su documento. Los posts con error
+     * propio (o sin documento en la respuesta) no aparecen: no se guarda nada y se vuelven a
+     * analizar la próxima vez, sin afectar al resto del lote.
+     */
+    private Map<Post, List<String>> processTextResponse(ResponseEntity<Map> response, List<Post> batch) {
+        Map<Post, List<String>> keyPhrasesByPost = new HashMap<>();
+        if (response.getBody() == null) return keyPhrasesByPost;
 
         List<Map<String, Object>> documents = (List<Map<String, Object>>) response.getBody().get("documents");
-        for (Map<String, Object> doc : documents) {
-            List<String> keyPhrases = (List<String>) doc.get("keyPhrases");
-            if (keyPhrases == null) continue;
+        if (documents != null) {
+            for (Map<String, Object> doc : documents) {
+                Post post = postForDocument(doc.get("id"), batch);
+                List<String> keyPhrases = (List<String>) doc.get("keyPhrases");
+                if (post != null && keyPhrases != null) {
+                    keyPhrasesByPost.put(post, keyPhrases);
+                }
+            }
+        }
+
+        List<Map<String, Object>> errors = (List<Map<String, Object>>) response.getBody().get("errors");
+        if (errors != null) {
+            for (Map<String, Object> error : errors) {
+                Post post = postForDocument(error.get("id"), batch);
+                log.warn("Azure Text Analytics rejected the text of post {}: {}",
+                        post != null ? post.getId() : error.get("id"), error.get("error"));
+            }
+        }
+        return keyPhrasesByPost;
+    }
 
-            keyPhrases.forEach(phrase ->
-                    groups.computeIfAbsent(phrase, k -> new ArrayList<>()).add(post));
+    private Post postForDocument(Object id, List<Post> batch) {
+        try {
+            int index = Integer.parseInt(String.valueOf(id));
+            return index >= 0 && index < batch.size() ? batch.get(index) : null;
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
 
+    private void addKeyPhrases(List<String> keyPhrases, Post post, TagIndex tagIndex) {
+        keyPhrases.forEach(phrase -> tagIndex.add(phrase, post));
+    }
+
     private String buildComposedText(Post post) {
         StringBuilder composedText = new StringBuilder();
 
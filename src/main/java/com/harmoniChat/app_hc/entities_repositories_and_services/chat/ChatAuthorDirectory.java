@@ -0,0 +1,54 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.harmoniChat.app_hc.entities_repositories_and_services.user.UserRepository;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Datos mínimos de los autores del chat, en caché para no consultar la tabla users
+ * en cada mensaje.
+ */
+@Component
+public class ChatAuthorDirectory {
+
+    private final UserRepository userRepository;
+    private final Cache<UUID, ChatAuthor> authors = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    public ChatAuthorDirectory(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    public Optional<ChatAuthor> find(UUID userId) {
+        ChatAuthor cached = authors.getIfPresent(userId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<ChatAuthor> author = userRepository.findById(userId)
+                .map(user -> new ChatAuthor(user.getId(), user.getFirstName(), user.getLastName()));
+        author.ifPresent(value -> authors.put(userId, value));
+        return author;
+    }
+
+    /**
+     * Nombre visible del autor, o {@code null} si el usuario ya no existe.
+     */
+    public String displayName(UUID userId) {
+        return find(userId).map(ChatAuthor::displayName).orElse(null);
+    }
+
+    public record ChatAuthor(UUID id, String firstName, String lastName) {
+
+        public String displayName() {
+            return ChatMessageView.displayName(firstName, lastName);
+        }
+    }
+}
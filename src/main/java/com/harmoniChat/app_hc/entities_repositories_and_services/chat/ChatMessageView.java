@@ -0,0 +1,57 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Representación de un mensaje para enviar al cliente (broadcast STOMP y respuestas REST).
+ * Solo lleva ids y el nombre visible del autor, nunca las entidades User ni Family.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ChatMessageView(
+        UUID id,
+        UUID familyId,
+        UUID userId,
+        String authorName,
+        String content,
+        String type,
+        String fileURL,
+        Long seq,
+        LocalDateTime date
+) {
+
+    public static ChatMessageView of(Message message, String authorName) {
+        return new ChatMessageView(
+                message.getId(),
+                message.getFamily().getId(),
+                message.getUser().getId(),
+                authorName,
+                message.getContent(),
+                message.getType(),
+                message.getFileURL(),
+                message.getSeq(),
+                message.getDate()
+        );
+    }
+
+    public static ChatMessageView of(MessageSummary summary, String authorName) {
+        return new ChatMessageView(
+                summary.id(),
+                summary.familyId(),
+                summary.userId(),
+                authorName,
+                summary.content(),
+                summary.type(),
+                summary.fileURL(),
+                summary.seq(),
+                summary.date()
+        );
+    }
+
+    static String displayName(String firstName, String lastName) {
+        String name = ((firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "")).trim();
+        return name.isEmpty() ? null : name;
+    }
+}
@@ -0,0 +1,44 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "chat_read_state")
+public class ChatReadState {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "family_id", nullable = false)
+    private UUID familyId;
+
+    @Column(name = "user_id", nullable = false)
+    private UUID userId;
+
+    // Último seq de la familia que el usuario ya leyó
+    @Column(name = "last_read_seq", nullable = false)
+    private long lastReadSeq;
+
+    // Mensajes de los demás miembros posteriores a la marca; lo mantienen los triggers de V20
+    @Column(name = "unread_count", nullable = false, insertable = false, updatable = false)
+    private long unreadCount;
+
+    @CreationTimestamp
+    @Column(name = "creation_date")
+    private LocalDateTime creationDate;
+
+    @UpdateTimestamp
+    @Column(name = "last_modified_date")
+    private LocalDateTime lastModifiedDate;
+}
@@ -0,0 +1,57 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface ChatReadStateRepository extends JpaRepository<ChatReadState, UUID> {
+
+    // Marca y contador de no leídos junto con el último seq de la familia, en una sola fila
+    interface UnreadRow {
+        UUID getFamilyId();
+
+        long getUnreadCount();
+
+        long getLastReadSeq();
+
+        long getLatestSeq();
+    }
+
+    String UNREAD_ROWS = "SELECT r.family_id AS familyId, r.unread_count AS unreadCount, " +
+            "r.last_read_seq AS lastReadSeq, COALESCE(s.last_seq, 0) AS latestSeq " +
+            "FROM chat_read_state r LEFT JOIN family_message_sequences s ON s.family_id = r.family_id ";
+
+    @Query(value = UNREAD_ROWS + "WHERE r.family_id = :familyId AND r.user_id = :userId", nativeQuery = true)
+    Optional<UnreadRow> findUnreadRow(@Param("familyId") UUID familyId, @Param("userId") UUID userId);
+
+    // Todas las familias del usuario en una consulta, sobre idx_chat_read_state_user
+    @Query(value = UNREAD_ROWS + "WHERE r.user_id = :userId", nativeQuery = true)
+    List<UnreadRow> findUnreadRows(@Param("userId") UUID userId);
+
+    /**
+     * Último seq de la familia, bloqueando su contador hasta el commit: los envíos de la
+     * familia esperan, así ningún mensaje queda fuera del contador al avanzar la marca.
+     */
+    @Query(value = "SELECT last_seq FROM family_message_sequences WHERE family_id = :familyId FOR SHARE",
+            nativeQuery = true)
+    Optional<Long> lockLatestSeq(@Param("familyId") UUID familyId);
+
+    // La marca nunca retrocede; el contador se recalcula con los mensajes de los demás
+    // posteriores a la nueva marca (casi siempre ninguno, al leer hasta el último)
+    @Modifying
+    @Query(value = "INSERT INTO chat_read_state (family_id, user_id, last_read_seq, unread_count) " +
+            "VALUES (:familyId, :userId, :lastReadSeq, (SELECT COUNT(*) FROM messages m " +
+            "WHERE m.family_id = :familyId AND m.seq > :lastReadSeq AND m.user_id <> :userId)) " +
+            "ON CONFLICT (family_id, user_id) DO UPDATE " +
+            "SET last_read_seq = EXCLUDED.last_read_seq, unread_count = EXCLUDED.unread_count " +
+            "WHERE chat_read_state.last_read_seq < EXCLUDED.last_read_seq", nativeQuery = true)
+    int advanceLastReadSeq(
+            @Param("familyId") UUID familyId,
+            @Param("userId") UUID userId,
+            @Param("lastReadSeq") long lastReadSeq);
+}
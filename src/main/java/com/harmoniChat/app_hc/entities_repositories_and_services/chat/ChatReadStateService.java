@@ -0,0 +1,98 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.family.Family;
+import com.harmoniChat.app_hc.entities_repositories_and_services.user.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Marcas de lectura por usuario ("leído hasta el seq N") y contadores de no leídos.
+ *
+ * <p>El no leído de un usuario son los mensajes de los demás miembros con seq mayor a su
+ * marca, así no cuentan los mensajes propios, los eliminados ni los huecos de numeración.
+ * Cada fila de chat_read_state guarda ese número y lo mantienen los triggers de V20 al
+ * insertar y eliminar mensajes, en la misma transacción; consultarlo es leer una fila, sin
+ * contar mensajes, y todas las familias de un usuario salen en una consulta. Como el contador
+ * está en la base de datos, todas las réplicas ven el mismo valor sin caché local.</p>
+ *
+ * <p>Un miembro sin fila aún no tiene mensajes de los demás desde que se unió (la fila se
+ * crea con el primero), así que su contador es cero.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class ChatReadStateService {
+
+    private final ChatReadStateRepository readStateRepository;
+    private final MessageRepository messageRepository;
+    private final UserRepository userRepository;
+
+    /**
+     * Avanza la marca de lectura del usuario hasta {@code seq}, o hasta el último mensaje de
+     * la familia si es {@code null}. Solo escribe si la marca realmente avanza.
+     */
+    @Transactional
+    public UnreadCount markRead(UUID familyId, UUID userId, Long seq) {
+        // Bloquea el contador de la familia hasta el commit: un envío concurrente espera y su
+        // incremento se aplica sobre la marca nueva
+        long latest = readStateRepository.lockLatestSeq(familyId).orElse(0L);
+        long target = seq != null ? Math.min(seq, latest) : latest;
+
+        if (target > 0) {
+            readStateRepository.advanceLastReadSeq(familyId, userId, target);
+        }
+        return unreadCount(familyId, userId);
+    }
+
+    @Transactional(readOnly = true)
+    public UnreadCount unreadCount(UUID familyId, UUID userId) {
+        return readStateRepository.findUnreadRow(familyId, userId)
+                .map(ChatReadStateService::toUnreadCount)
+                .orElseGet(() -> withoutRow(familyId));
+    }
+
+    /**
+     * Contadores para las familias indicadas o, si no se indican, para las familias en las
+     * que el usuario tiene marca de lectura y la familia a la que pertenece.
+     */
+    @Transactional(readOnly = true)
+    public List<UnreadCount> unreadCounts(UUID userId, Collection<UUID> familyIds) {
+        Map<UUID, UnreadCount> counts = readStateRepository.findUnreadRows(userId).stream()
+                .map(ChatReadStateService::toUnreadCount)
+                .collect(Collectors.toMap(UnreadCount::familyId, Function.identity()));
+
+        Set<UUID> families = new LinkedHashSet<>();
+        if (familyIds != null && !familyIds.isEmpty()) {
+            families.addAll(familyIds);
+        } else {
+            userRepository.findById(userId)
+                    .map(user -> user.getFamilyId())
+                    .map(Family::getId)
+                    .ifPresent(families::add);
+            families.addAll(counts.keySet());
+        }
+
+        return families.stream()
+                .map(familyId -> counts.containsKey(familyId) ? counts.get(familyId) : withoutRow(familyId))
+                .toList();
+    }
+
+    private UnreadCount withoutRow(UUID familyId) {
+        return new UnreadCount(familyId, 0, 0, messageRepository.findLatestSeqByFamilyId(familyId));
+    }
+
+    private static UnreadCount toUnreadCount(ChatReadStateRepository.UnreadRow row) {
+        return new UnreadCount(row.getFamilyId(), row.getUnreadCount(), row.getLastReadSeq(), row.getLatestSeq());
+    }
+
+    public record UnreadCount(UUID familyId, long unread, long lastReadSeq, long latestSeq) {}
+}
@@ -5,6 +5,7 @@ import com.harmoniChat.app_hc.entities_repositories_and_services.user.User;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Generated;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
@@ -37,11 +38,17 @@ public class Message {
     @Column(nullable = false)
     private String state; // "SENT", "DELIVERED", "READ"
 
-    @ManyToOne
+    // Asignado por el trigger set_message_seq al insertar; creciente dentro de cada familia
+    @Generated
+    @Column(name = "seq", insertable = false, updatable = false)
+    private Long seq;
+
+    // Lazy: las vistas del chat solo necesitan los ids y el nombre del autor sale de ChatAuthorDirectory
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "family_id", nullable = false)
     private Family family;
 
@@ -1,25 +1,64 @@
 package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
 
-import com.harmoniChat.app_hc.entities_repositories_and_services.family.Family;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface MessageRepository extends JpaRepository<Message, UUID> {
-    List<Message> findByFamilyOrderByDateAsc(Family family);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT m FROM Message m WHERE m.family.id = :familyId ORDER BY m.date ASC, m.id ASC")
+    Stream<Message> streamByFamilyIdOrderByDateAsc(@Param("familyId") UUID familyId);
 
-    @Query("SELECT m FROM Message m WHERE m.family.id = :familyId ORDER BY m.date DESC")
-    List<Message> findLatestMessagesByFamily(@Param("familyId") UUID familyId);
+    // Primera página del historial (más recientes primero), usa idx_messages_family_date_id
+    @Query(value = "SELECT * FROM messages WHERE family_id = :familyId " +
+            "ORDER BY date DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Message> findHistoryPage(@Param("familyId") UUID familyId, @Param("limit") int limit);
 
-    @Query("SELECT m FROM Message m WHERE m.family.id = :familyId AND m.id > :lastMessageId ORDER BY m.date ASC")
-    List<Message> findNewMessages(@Param("familyId") UUID familyId, @Param("lastMessageId") UUID lastMessageId);
+    // Páginas siguientes: mensajes estrictamente anteriores al cursor (date, id)
+    @Query(value = "SELECT * FROM messages WHERE family_id = :familyId " +
+            "AND (date, id) < (:cursorDate, :cursorId) " +
+            "ORDER BY date DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Message> findHistoryPageBefore(
+            @Param("familyId") UUID familyId,
+            @Param("cursorDate") LocalDateTime cursorDate,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
+
+    // El límite llega a la base de datos vía Pageable; solo se leen las columnas de la proyección
+    @Query("SELECT new com.harmoniChat.app_hc.entities_repositories_and_services.chat.MessageSummary(" +
+            "m.id, m.family.id, m.user.id, m.content, m.type, m.fileURL, m.state, m.seq, m.date) " +
+            "FROM Message m WHERE m.family.id = :familyId ORDER BY m.seq DESC")
+    List<MessageSummary> findLatestMessagesByFamily(@Param("familyId") UUID familyId, Pageable pageable);
+
+    // Rango sobre idx_messages_family_seq
+    @Query("SELECT new com.harmoniChat.app_hc.entities_repositories_and_services.chat.MessageSummary(" +
+            "m.id, m.family.id, m.user.id, m.content, m.type, m.fileURL, m.state, m.seq, m.date) " +
+            "FROM Message m WHERE m.family.id = :familyId AND m.seq > :afterSeq ORDER BY m.seq ASC")
+    List<MessageSummary> findNewMessages(@Param("familyId") UUID familyId, @Param("afterSeq") long afterSeq, Pageable pageable);
+
+    @Query("SELECT m.seq FROM Message m WHERE m.id = :messageId AND m.family.id = :familyId")
+    Optional<Long> findSeqByIdAndFamilyId(@Param("messageId") UUID messageId, @Param("familyId") UUID familyId);
+
+    @Query("SELECT COALESCE(MAX(m.seq), 0) FROM Message m WHERE m.family.id = :familyId")
+    long findLatestSeqByFamilyId(@Param("familyId") UUID familyId);
 
-    @Query("SELECT m FROM Message m WHERE m.family.id = :familyId AND m.user.id = :userId AND m.state = :state")
-    List<Message> findByFamilyIdAndUserIdAndState(
+    // Un solo UPDATE sobre idx_messages_sent_by_family_user; devuelve las filas afectadas
+    @Modifying
+    @Query("UPDATE Message m SET m.state = 'READ' " +
+            "WHERE m.family.id = :familyId AND m.user.id = :userId AND m.state = 'SENT' AND m.seq <= :upToSeq")
+    int markAsReadUpTo(
             @Param("familyId") UUID familyId,
             @Param("userId") UUID userId,
-            @Param("state") String state);
-}
\ No newline at end of file
+            @Param("upToSeq") long upToSeq);
+}
@@ -8,14 +8,22 @@ import com.harmoniChat.app_hc.entities_repositories_and_services.user.User;
 import com.harmoniChat.app_hc.entities_repositories_and_services.user.UserRepository;
 import com.harmoniChat.app_hc.exceptions.FamilyNotFoundException;
 import com.harmoniChat.app_hc.exceptions.UserNotFoundException;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +32,15 @@ public class MessageService {
     private final UserRepository userRepository;
     private final FamilyRepository familyRepository;
     private final BlobStorageService blobStorageService;
+    private final EntityManager entityManager;
+    private final RecentMessageCache recentMessageCache;
+    private final ChatReadStateService chatReadStateService;
+    private final ChatAuthorDirectory authorDirectory;
+
+    public static final int DEFAULT_HISTORY_PAGE_SIZE = 50;
+    private static final int MAX_HISTORY_PAGE_SIZE = 200;
+    public static final int DEFAULT_SYNC_LIMIT = 200;
+    private static final int MAX_SYNC_LIMIT = 500;
 
     @Transactional
     public Message sendMessage(UUID userId, UUID familyId, String content, String type, String fileURL) {
@@ -42,55 +59,173 @@ public class MessageService {
                 .fileURL(fileURL)
                 .build();
 
-        return messageRepository.save(message);
+        // Flush inmediato para que el seq asignado por la base de datos viaje en el broadcast
+        Message saved = messageRepository.saveAndFlush(message);
+
+        MessageSummary summary = MessageSummary.from(saved);
+        afterCommit(() -> recentMessageCache.append(familyId, summary));
+        return saved;
     }
 
-    public List<Message> getFamilyMessages(UUID familyId) {
-        Family family = familyRepository.findById(familyId)
-                .orElseThrow(() -> new FamilyNotFoundException("Familia no encontrada"));
+    /**
+     * Página del historial anterior al cursor (o la más reciente si no hay cursor).
+     * Los mensajes se devuelven en orden cronológico y {@code nextCursor} apunta al
+     * más antiguo de la página para pedir la siguiente.
+     */
+    @Transactional(readOnly = true)
+    public MessagePage getHistoryPage(UUID familyId, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE));
+
+        // Se pide un registro extra para saber si quedan mensajes más antiguos
+        List<Message> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = messageRepository.findHistoryPage(familyId, pageSize + 1);
+        } else {
+            MessageCursor position = MessageCursor.decode(cursor);
+            rows = messageRepository.findHistoryPageBefore(
+                    familyId, position.date(), position.id(), pageSize + 1);
+        }
 
-        return messageRepository.findByFamilyOrderByDateAsc(family);
+        boolean hasMore = rows.size() > pageSize;
+        List<Message> page = new ArrayList<>(hasMore ? rows.subList(0, pageSize) : rows);
+        String nextCursor = hasMore ? MessageCursor.of(page.get(page.size() - 1)).encode() : null;
+
+        Collections.reverse(page);
+        return new MessagePage(page.stream().map(this::toView).toList(), nextCursor, hasMore);
     }
 
-    public List<Message> getLatestMessages(UUID familyId, int limit) {
-        return messageRepository.findLatestMessagesByFamily(familyId)
-                .stream()
-                .limit(limit)
-                .toList();
+    /**
+     * Recorre todo el historial de la familia sin cargarlo completo en memoria.
+     *
+     * @deprecated usar {@link #getHistoryPage(UUID, String, int)}; se mantiene solo
+     * como respaldo para clientes que aún piden el historial completo.
+     */
+    @Deprecated
+    @Transactional(readOnly = true)
+    public void streamFamilyMessages(UUID familyId, Consumer<ChatMessageView> consumer) {
+        if (!familyRepository.existsById(familyId)) {
+            throw new FamilyNotFoundException("Familia no encontrada");
+        }
+
+        try (Stream<Message> messages = messageRepository.streamByFamilyIdOrderByDateAsc(familyId)) {
+            messages.forEach(message -> {
+                consumer.accept(toView(message));
+                // Liberar el mensaje del contexto de persistencia una vez escrito
+                entityManager.detach(message);
+            });
+        }
     }
 
-    public List<Message> getNewMessages(UUID familyId, UUID lastMessageId) {
-        return messageRepository.findNewMessages(familyId, lastMessageId);
+    private ChatMessageView toView(Message message) {
+        // getUser().getId() no inicializa el proxy; el nombre sale del directorio en caché
+        return ChatMessageView.of(message, authorDirectory.displayName(message.getUser().getId()));
     }
 
-    @Transactional
-    public void markMessagesAsRead(UUID familyId, UUID userId) {
-        try {
-            // Verificar si la familia existe
-            if (!familyRepository.existsById(familyId)) {
-                throw new FamilyNotFoundException("Familia no encontrada con ID: " + familyId);
-            }
+    /**
+     * Vista de un mensaje para el cliente, con el nombre del autor del directorio en caché.
+     * Todas las respuestas y difusiones del chat usan esta representación.
+     */
+    public ChatMessageView toView(MessageSummary summary) {
+        return ChatMessageView.of(summary, authorDirectory.displayName(summary.userId()));
+    }
+
+    private List<ChatMessageView> toViews(List<MessageSummary> summaries) {
+        return summaries.stream().map(this::toView).toList();
+    }
+
+    // Sin @Transactional: un acierto en la caché no debe tomar una conexión del pool
+    public List<ChatMessageView> getLatestMessages(UUID familyId, int limit) {
+        int maxRows = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+
+        Optional<List<MessageSummary>> cached = recentMessageCache.latest(familyId, maxRows);
+        if (cached.isPresent()) {
+            return toViews(cached.get());
+        }
+
+        if (maxRows > recentMessageCache.capacity()) {
+            return toViews(messageRepository.findLatestMessagesByFamily(familyId, PageRequest.of(0, maxRows)));
+        }
+
+        // Se lee el buffer completo para que las siguientes lecturas salgan de memoria; si un
+        // envío se confirma durante la lectura, la caché descarta esta carga
+        List<MessageSummary> latest = messageRepository.findLatestMessagesByFamily(
+                familyId, PageRequest.of(0, recentMessageCache.capacity()));
+        recentMessageCache.seed(familyId, latest);
+        return toViews(latest.subList(0, Math.min(maxRows, latest.size())));
+    }
+
+    /**
+     * Sincronización incremental: mensajes con seq mayor al último que tiene el cliente.
+     * Si solo se conoce el id del último mensaje se resuelve su seq; si ese mensaje ya
+     * no existe el cliente debe recargar el historial ({@code resyncRequired}).
+     */
+    public MessageDelta getNewMessages(UUID familyId, Long afterSeq, UUID lastMessageId, int limit) {
+        int maxRows = Math.max(1, Math.min(limit, MAX_SYNC_LIMIT));
 
-            // Verificar si el usuario existe
-            if (!userRepository.existsById(userId)) {
-                throw new UserNotFoundException("Usuario no encontrado con ID: " + userId);
+        long fromSeq;
+        if (afterSeq != null) {
+            fromSeq = afterSeq;
+        } else if (lastMessageId != null) {
+            Optional<Long> resolved = messageRepository.findSeqByIdAndFamilyId(lastMessageId, familyId);
+            if (resolved.isEmpty()) {
+                long latestSeq = messageRepository.findLatestSeqByFamilyId(familyId);
+                return new MessageDelta(List.of(), 0, latestSeq, latestSeq > 0, List.of(), true);
             }
+            fromSeq = resolved.get();
+        } else {
+            fromSeq = 0;
+        }
+
+        Optional<List<MessageSummary>> cached = recentMessageCache.since(familyId, fromSeq);
+        if (cached.isPresent()) {
+            List<MessageSummary> buffered = cached.get();
+            long latestSeq = buffered.isEmpty() ? fromSeq : buffered.get(buffered.size() - 1).seq();
+            boolean hasMore = buffered.size() > maxRows;
+            List<MessageSummary> messages = hasMore ? buffered.subList(0, maxRows) : buffered;
+            return new MessageDelta(toViews(messages), fromSeq, latestSeq, hasMore, findGaps(fromSeq, messages), false);
+        }
+
+        List<MessageSummary> rows = messageRepository.findNewMessages(familyId, fromSeq, PageRequest.of(0, maxRows + 1));
+        boolean hasMore = rows.size() > maxRows;
+        List<MessageSummary> messages = hasMore ? rows.subList(0, maxRows) : rows;
 
-            // Obtener y marcar mensajes como leídos
-            List<Message> unreadMessages = messageRepository.findByFamilyIdAndUserIdAndState(
-                    familyId,
-                    userId,
-                    "SENT"
-            );
+        // Solo se consulta el máximo cuando la respuesta quedó truncada
+        long latestSeq = hasMore
+                ? messageRepository.findLatestSeqByFamilyId(familyId)
+                : messages.isEmpty() ? fromSeq : Math.max(fromSeq, messages.get(messages.size() - 1).seq());
 
-            if (!unreadMessages.isEmpty()) {
-                unreadMessages.forEach(message -> message.setState("READ"));
-                messageRepository.saveAll(unreadMessages);
+        return new MessageDelta(toViews(messages), fromSeq, latestSeq, hasMore, findGaps(fromSeq, messages), false);
+    }
+
+    // Huecos en la numeración (mensajes eliminados) entre el seq del cliente y lo devuelto
+    private List<SeqRange> findGaps(long fromSeq, List<MessageSummary> messages) {
+        List<SeqRange> gaps = new ArrayList<>();
+        long expected = fromSeq + 1;
+        for (MessageSummary message : messages) {
+            if (message.seq() > expected) {
+                gaps.add(new SeqRange(expected, message.seq() - 1));
             }
-        } catch (Exception e) {
-            // Puedes loggear el error aquí si es necesario
-            throw e; // Re-lanzar la excepción para que el controlador la maneje
+            expected = message.seq() + 1;
         }
+        return gaps;
+    }
+
+    /**
+     * Marca como leídos los mensajes enviados por el usuario en la familia, opcionalmente
+     * solo hasta el seq indicado, y avanza su marca de lectura. Devuelve cuántos mensajes
+     * cambiaron.
+     */
+    @Transactional
+    public int markMessagesAsRead(UUID familyId, UUID userId, Long upToSeq) {
+        int updated = messageRepository.markAsReadUpTo(
+                familyId, userId, upToSeq != null ? upToSeq : Long.MAX_VALUE);
+        chatReadStateService.markRead(familyId, userId, upToSeq);
+
+        if (updated > 0) {
+            // El estado forma parte de los mensajes en caché
+            afterCommit(() -> recentMessageCache.invalidate(familyId));
+        }
+        return updated;
     }
 
     @Transactional
@@ -109,5 +244,35 @@ public class MessageService {
         }
 
         messageRepository.delete(message);
+
+        UUID familyId = message.getFamily().getId();
+        afterCommit(() -> recentMessageCache.invalidate(familyId));
+    }
+
+    // La caché solo debe reflejar cambios confirmados
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
-}
\ No newline at end of file
+
+    public record MessagePage(List<ChatMessageView> messages, String nextCursor, boolean hasMore) {}
+
+    public record MessageDelta(
+            List<ChatMessageView> messages,
+            long afterSeq,
+            long latestSeq,
+            boolean hasMore,
+            List<SeqRange> gaps,
+            boolean resyncRequired
+    ) {}
+
+    public record SeqRange(long fromSeq, long toSeq) {}
+}
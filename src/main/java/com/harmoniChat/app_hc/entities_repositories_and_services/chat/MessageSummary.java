@@ -0,0 +1,36 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Proyección de solo lectura de un mensaje: se construye directamente desde la
+ * consulta, sin hidratar las entidades User ni Family. El nombre del autor no va aquí:
+ * las vistas lo toman de {@link ChatAuthorDirectory}.
+ */
+public record MessageSummary(
+        UUID id,
+        UUID familyId,
+        UUID userId,
+        String content,
+        String type,
+        String fileURL,
+        String state,
+        Long seq,
+        LocalDateTime date
+) {
+
+    public static MessageSummary from(Message message) {
+        return new MessageSummary(
+                message.getId(),
+                message.getFamily().getId(),
+                message.getUser().getId(),
+                message.getContent(),
+                message.getType(),
+                message.getFileURL(),
+                message.getState(),
+                message.getSeq(),
+                message.getDate()
+        );
+    }
+}
@@ -0,0 +1,293 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import com.harmoniChat.app_hc.exceptions.UserNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escritura diferida de mensajes del chat (opcional, {@code harmonichat.chat.write-behind.enabled}).
+ *
+ * <p>El mensaje recibe su id al aceptarse y el cliente recibe respuesta de inmediato; un
+ * hilo escritor vacía la cola acotada con inserciones JDBC por lotes. Un lote se escribe al
+ * llegar a {@code max-batch-size} mensajes o cuando el más antiguo cumple
+ * {@code max-batch-age}, y al apagar la aplicación se escribe lo pendiente.</p>
+ *
+ * <p>El seq se asigna en la misma transacción que la inserción: el lote reserva los números
+ * de cada familia en family_message_sequences y el bloqueo de esa fila se mantiene hasta el
+ * commit, igual que con el trigger de V14. Así los seq de una familia se hacen visibles en
+ * orden aunque escriban varios nodos, y un lote que falla no deja números consumidos. Los
+ * contadores de no leídos los actualiza el trigger de V20 en esa misma transacción; la caché
+ * de recientes y la difusión ({@link Accepted#committed()}) se actualizan solo después del
+ * commit.</p>
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "harmonichat.chat.write-behind.enabled", havingValue = "true")
+public class MessageWriteBehindService {
+
+    private static final String INSERT_MESSAGE = "INSERT INTO messages " +
+            "(id, content, date, file_url, type, state, user_id, family_id, seq, creation_date, last_modified_date) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String RESERVE_SEQS = "INSERT INTO family_message_sequences (family_id, last_seq) " +
+            "VALUES (?, ?) ON CONFLICT (family_id) DO UPDATE " +
+            "SET last_seq = family_message_sequences.last_seq + EXCLUDED.last_seq " +
+            "RETURNING last_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatAuthorDirectory authorDirectory;
+    private final RecentMessageCache recentMessageCache;
+
+    private final int maxBatchSize;
+    private final Duration maxBatchAge;
+    private final Duration shutdownTimeout;
+
+    private final BlockingQueue<PendingMessage> queue;
+
+    private final Counter persisted;
+    private final Counter dropped;
+    private final DistributionSummary batchSizes;
+
+    private volatile boolean running = true;
+    private Thread writer;
+
+    public MessageWriteBehindService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ChatAuthorDirectory authorDirectory,
+            RecentMessageCache recentMessageCache,
+            MeterRegistry meterRegistry,
+            @Value("${harmonichat.chat.write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${harmonichat.chat.write-behind.max-batch-size:100}") int maxBatchSize,
+            @Value("${harmonichat.chat.write-behind.max-batch-age:200ms}") Duration maxBatchAge,
+            @Value("${harmonichat.chat.write-behind.shutdown-timeout:10s}") Duration shutdownTimeout) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.authorDirectory = authorDirectory;
+        this.recentMessageCache = recentMessageCache;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchAge = maxBatchAge;
+        this.shutdownTimeout = shutdownTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.persisted = Counter.builder("chat.write_behind.messages").tag("result", "persisted").register(meterRegistry);
+        this.dropped = Counter.builder("chat.write_behind.messages").tag("result", "dropped").register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("chat.write_behind.batch_size").register(meterRegistry);
+        Gauge.builder("chat.write_behind.queue_depth", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        writer = new Thread(this::runWriter, "chat-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Acepta un mensaje para escritura diferida. El mensaje devuelto tiene id pero aún no
+     * seq; {@code committed} se completa con el seq definitivo cuando el lote se confirma
+     * (en orden de seq dentro de la familia) o con error si el mensaje se descarta.
+     */
+    public Accepted submit(UUID userId, UUID familyId, String content, String type, String fileURL) {
+        if (!running) {
+            throw new IllegalStateException("La escritura de mensajes se está deteniendo");
+        }
+
+        if (authorDirectory.find(userId).isEmpty()) {
+            throw new UserNotFoundException("Usuario no encontrado");
+        }
+
+        MessageSummary summary = new MessageSummary(UUID.randomUUID(), familyId, userId,
+                content, type, fileURL, "SENT", null, LocalDateTime.now());
+        PendingMessage pending = new PendingMessage(summary, System.nanoTime(), new CompletableFuture<>());
+
+        if (!queue.offer(pending)) {
+            throw new IllegalStateException("Cola de escritura de mensajes llena");
+        }
+        return new Accepted(summary, pending.committed());
+    }
+
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Completar el lote hasta el tamaño máximo o la edad máxima del primer mensaje
+                long deadline = first.enqueuedAtNanos() + maxBatchAge.toNanos();
+                while (batch.size() < maxBatchSize && running) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, maxBatchSize - batch.size());
+
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Exception e) {
+                // Ningún mensaje aceptado queda sin respuesta, aunque el error sea inesperado
+                log.error("Error en el escritor diferido de mensajes", e);
+                batch.stream().filter(pending -> !pending.committed().isDone()).forEach(pending -> drop(pending, e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        batchSizes.record(batch.size());
+        List<MessageSummary> written;
+        try {
+            written = transactionTemplate.execute(status -> insert(batch));
+        } catch (RuntimeException e) {
+            // Datos (usuario o familia eliminados) o transacción (pool agotado, commit fallido):
+            // un mensaje inválido no debe tumbar el lote completo
+            log.warn("Falló la escritura por lotes de {} mensajes, se reintenta uno a uno: {}",
+                    batch.size(), e.getMessage());
+            batch.forEach(this::writeSingle);
+            return;
+        }
+        persisted.increment(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            committed(batch.get(i), written.get(i));
+        }
+    }
+
+    private void writeSingle(PendingMessage pending) {
+        MessageSummary written;
+        try {
+            written = transactionTemplate.execute(status -> insert(List.of(pending)).get(0));
+        } catch (RuntimeException e) {
+            drop(pending, e);
+            return;
+        }
+        persisted.increment();
+        committed(pending, written);
+    }
+
+    private void drop(PendingMessage pending, Exception cause) {
+        MessageSummary message = pending.message();
+        dropped.increment();
+        pending.committed().completeExceptionally(cause);
+        log.error("Mensaje {} (familia {}) descartado: {}", message.id(), message.familyId(), cause.getMessage());
+    }
+
+    /**
+     * Reserva los seq de cada familia del lote y los inserta; debe correr dentro de la
+     * transacción. Las filas de family_message_sequences se bloquean en orden de familia
+     * para que dos nodos con lotes de las mismas familias no se bloqueen entre sí.
+     */
+    private List<MessageSummary> insert(List<PendingMessage> batch) {
+        Map<UUID, Integer> countByFamily = new TreeMap<>();
+        batch.forEach(pending -> countByFamily.merge(pending.message().familyId(), 1, Integer::sum));
+
+        Map<UUID, Long> nextSeqByFamily = new TreeMap<>();
+        countByFamily.forEach((familyId, count) -> {
+            Long last = jdbcTemplate.queryForObject(RESERVE_SEQS, Long.class, familyId, count);
+            nextSeqByFamily.put(familyId, last - count + 1);
+        });
+
+        // En orden de llegada, así el seq respeta el orden de envío dentro de cada familia
+        List<MessageSummary> written = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            MessageSummary message = pending.message();
+            long seq = nextSeqByFamily.merge(message.familyId(), 1L, Long::sum) - 1;
+            written.add(withSeq(message, seq));
+        }
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE, written, written.size(), this::bind);
+        return written;
+    }
+
+    // El mensaje ya está escrito: un error en la caché no impide confirmarlo ni difundirlo
+    private void committed(PendingMessage pending, MessageSummary written) {
+        try {
+            recentMessageCache.append(written.familyId(), written);
+        } catch (RuntimeException e) {
+            log.warn("Mensaje {} escrito, pero no se actualizó la caché de recientes de la familia {}: {}",
+                    written.id(), written.familyId(), e.getMessage());
+            recentMessageCache.invalidate(written.familyId());
+        }
+        pending.committed().complete(written);
+    }
+
+    private static MessageSummary withSeq(MessageSummary message, long seq) {
+        return new MessageSummary(message.id(), message.familyId(), message.userId(), message.content(),
+                message.type(), message.fileURL(), message.state(), seq, message.date());
+    }
+
+    private void bind(PreparedStatement ps, MessageSummary message) throws SQLException {
+        Timestamp date = Timestamp.valueOf(message.date());
+        ps.setObject(1, message.id());
+        ps.setString(2, message.content());
+        ps.setTimestamp(3, date);
+        ps.setString(4, message.fileURL());
+        ps.setString(5, message.type());
+        ps.setString(6, message.state());
+        ps.setObject(7, message.userId());
+        ps.setObject(8, message.familyId());
+        ps.setLong(9, message.seq());
+        ps.setTimestamp(10, date);
+        ps.setTimestamp(11, date);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(shutdownTimeout.toMillis());
+        if (writer.isAlive()) {
+            log.error("El escritor diferido no terminó en {}; {} mensajes sin escribir",
+                    shutdownTimeout, queue.size());
+        } else {
+            log.info("Escritor diferido detenido, cola vacía");
+        }
+    }
+
+    /**
+     * Mensaje aceptado (sin seq todavía) y su confirmación con el seq definitivo.
+     */
+    public record Accepted(MessageSummary message, CompletableFuture<MessageSummary> committed) {}
+
+    private record PendingMessage(MessageSummary message, long enqueuedAtNanos,
+                                  CompletableFuture<MessageSummary> committed) {}
+}
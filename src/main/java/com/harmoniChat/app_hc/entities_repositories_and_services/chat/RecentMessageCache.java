@@ -0,0 +1,263 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Últimos mensajes de cada familia en memoria, para responder "latest-messages" y las
+ * sincronizaciones cortas sin ir a Postgres.
+ *
+ * <p>Cada familia tiene un buffer circular acotado, ordenado por seq: un envío ocupa la
+ * posición del mensaje más antiguo sin copiar el resto, y solo los lectores copian lo que
+ * devuelven. Un buffer solo se
+ * crea a partir de una lectura de la base de datos y después se mantiene con los envíos
+ * confirmados; si llega un seq que no es el siguiente esperado, el buffer se descarta y
+ * se vuelve a cargar en la próxima lectura. Las familias inactivas salen por tiempo sin
+ * acceso y, si se supera el tope de memoria, por tamaño.</p>
+ *
+ * <p>La lectura que carga un buffer se hace sin bloqueo, así que un envío puede confirmarse
+ * entre la lectura y la carga. Por eso la carga nunca reemplaza un buffer existente y se
+ * descarta si el último seq leído es anterior al último envío visto para la familia.</p>
+ *
+ * <p>Solo ve los envíos hechos en este nodo, así que con el broker STOMP en modo relay
+ * (varias réplicas) se desactiva sola, igual que con {@code messages-per-family: 0}.</p>
+ */
+@Slf4j
+@Component
+public class RecentMessageCache {
+
+    // Tamaño aproximado de un MessageSummary sin contar los textos
+    private static final int SUMMARY_OVERHEAD_BYTES = 160;
+
+    private final int capacity;
+    private final Cache<UUID, FamilyBuffer> buffers;
+    // Último seq enviado por familia, se tenga o no buffer
+    private final Cache<UUID, AtomicLong> latestSeqs;
+    private final Counter hits;
+    private final Counter misses;
+
+    public RecentMessageCache(
+            @Value("${harmonichat.chat.recent-cache.messages-per-family:100}") int capacity,
+            @Value("${harmonichat.chat.recent-cache.max-memory-mb:64}") long maxMemoryMb,
+            @Value("${harmonichat.chat.recent-cache.idle-expiry:30m}") Duration idleExpiry,
+            @Value("${harmonichat.websocket.broker.mode:simple}") String brokerMode,
+            MeterRegistry meterRegistry) {
+
+        if ("relay".equalsIgnoreCase(brokerMode) && capacity > 0) {
+            log.info("Broker en modo relay: caché de mensajes recientes desactivada");
+            capacity = 0;
+        }
+        this.capacity = capacity;
+        this.buffers = Caffeine.newBuilder()
+                .maximumWeight(maxMemoryMb * 1024 * 1024)
+                .weigher((UUID familyId, FamilyBuffer buffer) -> buffer.estimatedBytes())
+                .expireAfterAccess(idleExpiry)
+                .build();
+        this.latestSeqs = Caffeine.newBuilder()
+                .expireAfterAccess(idleExpiry)
+                .build();
+
+        this.hits = Counter.builder("chat.recent_cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("chat.recent_cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("chat.recent_cache.families", buffers, cache -> cache.estimatedSize())
+                .register(meterRegistry);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Los {@code limit} mensajes más recientes, del más nuevo al más antiguo, si el buffer
+     * de la familia los contiene todos.
+     */
+    public Optional<List<MessageSummary>> latest(UUID familyId, int limit) {
+        FamilyBuffer buffer = buffers.getIfPresent(familyId);
+        List<MessageSummary> result = buffer != null ? buffer.latest(limit) : null;
+        if (result == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(result);
+    }
+
+    /**
+     * Mensajes con seq mayor a {@code afterSeq} en orden ascendente, si el buffer cubre todo
+     * ese rango.
+     */
+    public Optional<List<MessageSummary>> since(UUID familyId, long afterSeq) {
+        FamilyBuffer buffer = buffers.getIfPresent(familyId);
+        List<MessageSummary> result = buffer != null ? buffer.since(afterSeq) : null;
+        if (result == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(result);
+    }
+
+    /**
+     * Carga el buffer con los mensajes más recientes leídos de la base de datos
+     * (del más nuevo al más antiguo, como los devuelve el repositorio). No hace nada si la
+     * familia ya tiene buffer o si la lectura quedó atrás de un envío posterior.
+     */
+    public void seed(UUID familyId, List<MessageSummary> newestFirst) {
+        if (capacity <= 0) {
+            return; // caché desactivada
+        }
+        FamilyBuffer seeded = new FamilyBuffer(capacity, newestFirst.size() < capacity);
+        for (int i = Math.min(newestFirst.size(), capacity) - 1; i >= 0; i--) {
+            seeded.append(newestFirst.get(i));
+        }
+
+        buffers.asMap().compute(familyId, (id, existing) -> {
+            if (existing != null) {
+                return existing;
+            }
+            AtomicLong latestSent = latestSeqs.getIfPresent(familyId);
+            if (latestSent != null && latestSent.get() > seeded.lastSeq()) {
+                log.debug("Carga de la familia {} desactualizada (seq {} < {}), se descarta",
+                        familyId, seeded.lastSeq(), latestSent.get());
+                return null;
+            }
+            return seeded;
+        });
+    }
+
+    /**
+     * Agrega un mensaje ya confirmado. Solo se actualizan buffers existentes y únicamente
+     * si el seq es el siguiente al último conocido.
+     */
+    public void append(UUID familyId, MessageSummary message) {
+        if (capacity <= 0) {
+            return;
+        }
+        // Antes de tocar el buffer, para que una carga concurrente vea este envío
+        latestSeqs.get(familyId, id -> new AtomicLong()).accumulateAndGet(message.seq(), Math::max);
+        // El compute de la caché deja un solo envío a la vez por familia y vuelve a pesar el buffer
+        buffers.asMap().computeIfPresent(familyId, (id, buffer) -> {
+            long lastSeq = buffer.lastSeq();
+            if (message.seq() <= lastSeq) {
+                return buffer; // ya incluido al recargar desde la base de datos
+            }
+            if (message.seq() != lastSeq + 1 && !buffer.isEmpty()) {
+                log.debug("Seq {} fuera de orden para familia {} (último {}), se descarta el buffer",
+                        message.seq(), familyId, lastSeq);
+                return null;
+            }
+            buffer.append(message);
+            return buffer;
+        });
+    }
+
+    public void invalidate(UUID familyId) {
+        buffers.invalidate(familyId);
+    }
+
+    /**
+     * Buffer circular de una familia, del más antiguo al más nuevo. Se modifica en su lugar y
+     * los lectores copian lo que devuelven; el monitor del buffer protege ambas cosas.
+     */
+    private static final class FamilyBuffer {
+
+        private final MessageSummary[] ring;
+        private int head; // posición del mensaje más antiguo
+        private int size;
+        private boolean fullHistory;
+        private int bytes = 64;
+
+        FamilyBuffer(int capacity, boolean fullHistory) {
+            this.ring = new MessageSummary[capacity];
+            this.fullHistory = fullHistory;
+        }
+
+        synchronized boolean isEmpty() {
+            return size == 0;
+        }
+
+        synchronized long lastSeq() {
+            return size == 0 ? 0 : get(size - 1).seq();
+        }
+
+        synchronized void append(MessageSummary message) {
+            if (size == ring.length) {
+                // Al salir el mensaje más antiguo el buffer deja de tener el historial completo
+                fullHistory = false;
+                bytes -= estimatedBytes(ring[head]);
+                ring[head] = message;
+                head = (head + 1) % ring.length;
+            } else {
+                ring[(head + size) % ring.length] = message;
+                size++;
+            }
+            bytes += estimatedBytes(message);
+        }
+
+        /**
+         * Los {@code limit} más recientes, del más nuevo al más antiguo, o {@code null} si el
+         * buffer no los tiene todos.
+         */
+        synchronized List<MessageSummary> latest(int limit) {
+            if (size < limit && !fullHistory) {
+                return null;
+            }
+            int count = Math.min(limit, size);
+            List<MessageSummary> result = new ArrayList<>(count);
+            for (int i = size - 1; i >= size - count; i--) {
+                result.add(get(i));
+            }
+            return result;
+        }
+
+        /**
+         * Los posteriores a {@code afterSeq} en orden ascendente, o {@code null} si el buffer
+         * no cubre todo ese rango.
+         */
+        synchronized List<MessageSummary> since(long afterSeq) {
+            if (!fullHistory && (size == 0 || afterSeq < get(0).seq() - 1)) {
+                return null;
+            }
+            List<MessageSummary> result = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (get(i).seq() > afterSeq) {
+                    result.add(get(i));
+                }
+            }
+            return result;
+        }
+
+        synchronized int estimatedBytes() {
+            return bytes;
+        }
+
+        private MessageSummary get(int index) {
+            return ring[(head + index) % ring.length];
+        }
+
+        private static int estimatedBytes(MessageSummary message) {
+            return SUMMARY_OVERHEAD_BYTES + 2 * length(message.content()) + 2 * length(message.fileURL());
+        }
+
+        private static int length(String value) {
+            return value == null ? 0 : value.length();
+        }
+    }
+}
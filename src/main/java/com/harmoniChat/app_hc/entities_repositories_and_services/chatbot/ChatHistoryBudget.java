@@ -0,0 +1,71 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Presupuesto de tokens para el historial que se envía a Gemini. Se conservan los turnos
+ * más recientes que quepan en {@code max-history-tokens} y se descartan los más antiguos.
+ *
+ * <p>Los tokens se estiman como caracteres / 4, suficiente para acotar el tamaño de la
+ * petición sin llamar al endpoint countTokens.</p>
+ */
+@Component
+public class ChatHistoryBudget {
+
+    // Coste aproximado por turno de los campos role y parts
+    private static final int TURN_OVERHEAD_TOKENS = 4;
+
+    private final int maxHistoryTokens;
+    private final Counter trimmedTurns;
+
+    public ChatHistoryBudget(
+            @Value("${harmonichat.chatbot.max-history-tokens:4000}") int maxHistoryTokens,
+            MeterRegistry meterRegistry) {
+        this.maxHistoryTokens = maxHistoryTokens;
+        this.trimmedTurns = Counter.builder("chatbot.history.trimmed_turns").register(meterRegistry);
+    }
+
+    /**
+     * Los turnos más recientes del historial que caben en el presupuesto, en orden original.
+     * El resultado siempre empieza con un turno del usuario, como exige Gemini.
+     */
+    public List<ChatMessage> fit(List<ChatMessage> history) {
+        if (history == null || history.isEmpty()) {
+            return List.of();
+        }
+
+        List<ChatMessage> kept = new ArrayList<>();
+        int used = 0;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            ChatMessage message = history.get(i);
+            int cost = estimateTokens(message.getContent()) + TURN_OVERHEAD_TOKENS;
+            if (used + cost > maxHistoryTokens) {
+                break;
+            }
+            used += cost;
+            kept.add(message);
+        }
+        Collections.reverse(kept);
+
+        while (!kept.isEmpty() && !"user".equals(kept.get(0).getRole())) {
+            kept.remove(0);
+        }
+
+        int trimmed = history.size() - kept.size();
+        if (trimmed > 0) {
+            trimmedTurns.increment(trimmed);
+        }
+        return kept;
+    }
+
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+}
@@ -29,8 +29,9 @@ public class ChatMessage {
     }
 
     public GeminiChatService.GeminiContent toGeminiContent() {
+        // Gemini solo acepta los roles "user" y "model"
         return new GeminiChatService.GeminiContent(
-                this.getRole(),
+                this.role.equals("user") ? "user" : "model",
                 List.of(new GeminiChatService.GeminiPart(this.getContent()))
         );
     }
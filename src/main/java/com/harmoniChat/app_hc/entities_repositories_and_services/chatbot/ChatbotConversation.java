@@ -0,0 +1,41 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "chatbot_conversations")
+public class ChatbotConversation {
+    // Lo genera el cliente al iniciar la conversación
+    @Id
+    private UUID id;
+
+    // Usuario (REST) o familia (WebSocket) dueño de la conversación
+    @Column(name = "owner_id", nullable = false)
+    private UUID ownerId;
+
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+
+    // Turnos recientes aún sin resumir, en JSON
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String turns;
+
+    @CreationTimestamp
+    @Column(name = "creation_date", updatable = false)
+    private LocalDateTime creationDate;
+
+    @UpdateTimestamp
+    @Column(name = "last_modified_date")
+    private LocalDateTime lastModifiedDate;
+}
@@ -0,0 +1,25 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+public interface ChatbotConversationRepository extends JpaRepository<ChatbotConversation, UUID> {
+
+    // creation_date solo se escribe al insertar; last_modified_date lo actualiza el trigger
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO chatbot_conversations (id, owner_id, summary, turns) " +
+            "VALUES (:id, :ownerId, :summary, :turns) " +
+            "ON CONFLICT (id) DO UPDATE SET summary = EXCLUDED.summary, turns = EXCLUDED.turns",
+            nativeQuery = true)
+    int upsert(
+            @Param("id") UUID id,
+            @Param("ownerId") UUID ownerId,
+            @Param("summary") String summary,
+            @Param("turns") String turns);
+}
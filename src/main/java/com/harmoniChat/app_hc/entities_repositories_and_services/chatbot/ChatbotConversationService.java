@@ -0,0 +1,248 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Conversaciones del chatbot guardadas en el servidor: el cliente solo envía el id de la
+ * conversación y el mensaje nuevo, en lugar de todo el historial en cada turno.
+ *
+ * <p>Las conversaciones activas viven en memoria con un tope de tamaño (se descartan las de
+ * uso más antiguo) y, con {@code persist: true}, también en la tabla chatbot_conversations
+ * para sobrevivir a reinicios. Cuando una conversación supera {@code compact-after-turns}
+ * turnos, los más antiguos se resumen en segundo plano con Gemini y solo se conservan los
+ * {@code keep-recent-turns} más recientes, así el historial enviado queda acotado.</p>
+ *
+ * <p>Los guardados de una conversación se hacen de a uno y cada uno escribe el estado más
+ * reciente en ese momento, así un guardado atrasado nunca pisa uno más nuevo.</p>
+ */
+@Slf4j
+@Service
+public class ChatbotConversationService {
+
+    private static final TypeReference<List<ChatMessage>> TURNS_TYPE = new TypeReference<>() {};
+
+    private final GeminiChatService chatService;
+    private final ChatbotConversationRepository conversationRepository;
+    private final ObjectMapper objectMapper;
+
+    private final boolean persist;
+    private final int compactAfterTurns;
+    private final int keepRecentTurns;
+    private final Cache<UUID, Conversation> conversations;
+    private final Counter compactions;
+
+    public ChatbotConversationService(
+            GeminiChatService chatService,
+            ChatbotConversationRepository conversationRepository,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${harmonichat.chatbot.conversations.max-conversations:10000}") long maxConversations,
+            @Value("${harmonichat.chatbot.conversations.idle-expiry:2h}") Duration idleExpiry,
+            @Value("${harmonichat.chatbot.conversations.compact-after-turns:20}") int compactAfterTurns,
+            @Value("${harmonichat.chatbot.conversations.keep-recent-turns:10}") int keepRecentTurns,
+            @Value("${harmonichat.chatbot.conversations.persist:false}") boolean persist) {
+
+        this.chatService = chatService;
+        this.conversationRepository = conversationRepository;
+        this.objectMapper = objectMapper;
+        this.persist = persist;
+        this.compactAfterTurns = compactAfterTurns;
+        this.keepRecentTurns = keepRecentTurns;
+        this.conversations = Caffeine.newBuilder()
+                .maximumSize(maxConversations)
+                .expireAfterAccess(idleExpiry)
+                .build();
+
+        this.compactions = Counter.builder("chatbot.conversations.compactions").register(meterRegistry);
+        Gauge.builder("chatbot.conversations.active", conversations, cache -> cache.estimatedSize())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Responde un mensaje dentro de la conversación. {@code prompt} es lo que se envía a Gemini
+     * (puede incluir contexto adicional) y {@code message} lo que queda guardado como turno.
+     */
+    public Mono<String> reply(UUID conversationId, UUID ownerId, String message, String prompt) {
+        Conversation conversation = conversation(conversationId, ownerId);
+
+        return chatService.chatResponse(prompt, conversation.history())
+                .doOnNext(response -> record(conversation, message, response));
+    }
+
+    /**
+     * Igual que {@link #reply}, pero por fragmentos; el turno se guarda al completarse.
+     */
+    public Flux<String> streamReply(UUID conversationId, UUID ownerId, String message, String prompt) {
+        Conversation conversation = conversation(conversationId, ownerId);
+        StringBuilder fullText = new StringBuilder();
+
+        return chatService.streamChatResponse(prompt, conversation.history())
+                .doOnNext(fullText::append)
+                .doOnComplete(() -> record(conversation, message, fullText.toString()));
+    }
+
+    private Conversation conversation(UUID conversationId, UUID ownerId) {
+        if (conversationId == null || ownerId == null) {
+            throw new IllegalArgumentException("Se requieren el id de la conversación y su dueño");
+        }
+
+        Conversation conversation = conversations.get(conversationId, id -> load(id, ownerId));
+        if (!conversation.ownerId.equals(ownerId)) {
+            throw new IllegalArgumentException("La conversación no pertenece a este usuario o familia");
+        }
+        return conversation;
+    }
+
+    private Conversation load(UUID conversationId, UUID ownerId) {
+        if (persist) {
+            return conversationRepository.findById(conversationId)
+                    .map(this::fromEntity)
+                    .orElseGet(() -> new Conversation(conversationId, ownerId, null, new ArrayList<>()));
+        }
+        return new Conversation(conversationId, ownerId, null, new ArrayList<>());
+    }
+
+    private void record(Conversation conversation, String message, String response) {
+        boolean compact;
+        synchronized (conversation) {
+            conversation.turns.add(new ChatMessage("user", message));
+            conversation.turns.add(new ChatMessage("assistant", response));
+            conversation.revision++;
+            compact = conversation.turns.size() > compactAfterTurns && !conversation.compacting;
+            if (compact) {
+                conversation.compacting = true;
+            }
+        }
+
+        save(conversation);
+        if (compact) {
+            compact(conversation);
+        }
+    }
+
+    // Resume los turnos antiguos sin bloquear la respuesta al usuario
+    private void compact(Conversation conversation) {
+        String previousSummary;
+        List<ChatMessage> oldest;
+        synchronized (conversation) {
+            previousSummary = conversation.summary;
+            oldest = List.copyOf(conversation.turns.subList(0, conversation.turns.size() - keepRecentTurns));
+        }
+
+        chatService.summarize(previousSummary, oldest)
+                .doFinally(signal -> {
+                    synchronized (conversation) {
+                        conversation.compacting = false;
+                    }
+                })
+                .subscribe(
+                        summary -> {
+                            synchronized (conversation) {
+                                // Los turnos nuevos se agregan al final, así que los resumidos siguen al inicio
+                                conversation.turns.subList(0, oldest.size()).clear();
+                                conversation.summary = summary;
+                                conversation.revision++;
+                            }
+                            compactions.increment();
+                            save(conversation);
+                        },
+                        error -> log.warn("No se pudo resumir la conversación {}: {}", conversation.id, error.getMessage())
+                );
+    }
+
+    private void save(Conversation conversation) {
+        if (!persist) {
+            return;
+        }
+
+        // Fuera del hilo de red: JPA es bloqueante
+        Mono.fromRunnable(() -> write(conversation))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, error -> log.error("Error guardando la conversación {}", conversation.id, error));
+    }
+
+    private void write(Conversation conversation) {
+        synchronized (conversation.saveLock) {
+            long revision;
+            String summary;
+            String turns;
+            synchronized (conversation) {
+                revision = conversation.revision;
+                summary = conversation.summary;
+                turns = writeTurns(conversation.turns);
+            }
+            // Un guardado anterior ya escribió este estado o uno más nuevo
+            if (revision <= conversation.savedRevision) {
+                return;
+            }
+            conversationRepository.upsert(conversation.id, conversation.ownerId, summary, turns);
+            conversation.savedRevision = revision;
+        }
+    }
+
+    private Conversation fromEntity(ChatbotConversation entity) {
+        try {
+            List<ChatMessage> turns = objectMapper.readValue(entity.getTurns(), TURNS_TYPE);
+            return new Conversation(entity.getId(), entity.getOwnerId(), entity.getSummary(), new ArrayList<>(turns));
+        } catch (JsonProcessingException e) {
+            log.warn("Turnos ilegibles en la conversación {}, se empieza de nuevo", entity.getId());
+            return new Conversation(entity.getId(), entity.getOwnerId(), entity.getSummary(), new ArrayList<>());
+        }
+    }
+
+    private String writeTurns(List<ChatMessage> turns) {
+        try {
+            return objectMapper.writeValueAsString(turns);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudieron serializar los turnos", e);
+        }
+    }
+
+    private static final class Conversation {
+        private final UUID id;
+        private final UUID ownerId;
+        private String summary;
+        private final List<ChatMessage> turns;
+        private boolean compacting;
+        // Cambios en memoria y último cambio guardado; los guardados se serializan con saveLock
+        private long revision;
+        private long savedRevision;
+        private final Object saveLock = new Object();
+
+        private Conversation(UUID id, UUID ownerId, String summary, List<ChatMessage> turns) {
+            this.id = id;
+            this.ownerId = ownerId;
+            this.summary = summary;
+            this.turns = turns;
+        }
+
+        // El resumen va como un intercambio previo para respetar la alternancia user/model
+        synchronized List<ChatMessage> history() {
+            List<ChatMessage> history = new ArrayList<>(turns.size() + 2);
+            if (summary != null) {
+                history.add(new ChatMessage("user", "[Resumen de la conversación anterior]: " + summary));
+                history.add(new ChatMessage("assistant", "Entendido, lo tendré en cuenta."));
+            }
+            history.addAll(turns);
+            return history;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detecta si un mensaje habla de emociones y de cuáles, para decidir si el chatbot agrega el
+ * contexto emocional del usuario.
+ *
+ * <p>El vocabulario ({@code harmonichat.chatbot.emotion-intent.vocabulary}: categoría → lista
+ * de palabras) se compila una vez en un autómata Aho-Corasick, así cada mensaje se recorre
+ * una sola vez sin importar cuántas palabras haya. Mensaje y vocabulario se comparan sin
+ * mayúsculas, tildes ni signos. Cada palabra debe empezar al inicio de una palabra del
+ * mensaje ("triste" encuentra "tristeza", pero "emo" no encuentra "memoria").</p>
+ */
+@Component
+public class EmotionIntentMatcher {
+
+    static final Map<String, List<String>> DEFAULT_VOCABULARY = defaultVocabulary();
+
+    // Minúscula sin tilde de cada carácter latino; el resto de signos pasan a espacio
+    private static final char[] FOLD = new char[0x250];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++) {
+            String folded = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD)
+                    .replaceAll("\\p{M}", "")
+                    .toLowerCase(Locale.ROOT);
+            FOLD[c] = folded.length() == 1 && Character.isLetterOrDigit(folded.charAt(0)) ? folded.charAt(0) : ' ';
+        }
+    }
+
+    private final List<String> categories;
+    // Autómata: transiciones por nodo, enlace de fallo y palabras que terminan en cada nodo
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final List<Integer> failure = new ArrayList<>();
+    private final List<int[]> outputs = new ArrayList<>();
+    private final List<Integer> keywordLengths = new ArrayList<>();
+    private final List<Integer> keywordCategories = new ArrayList<>();
+
+    @Autowired
+    public EmotionIntentMatcher(Environment environment) {
+        this(Binder.get(environment)
+                .bind("harmonichat.chatbot.emotion-intent.vocabulary", Bindable.mapOf(String.class, String[].class))
+                .map(EmotionIntentMatcher::toLists)
+                .orElse(DEFAULT_VOCABULARY));
+    }
+
+    public EmotionIntentMatcher(Map<String, List<String>> vocabulary) {
+        this.categories = List.copyOf(vocabulary.keySet());
+        newNode();
+
+        for (int category = 0; category < categories.size(); category++) {
+            for (String keyword : vocabulary.get(categories.get(category))) {
+                String normalized = normalize(keyword);
+                if (!normalized.isEmpty()) {
+                    addKeyword(normalized, category);
+                }
+            }
+        }
+        buildFailureLinks();
+    }
+
+    /**
+     * Categorías del vocabulario que aparecen en el mensaje, en el orden de la configuración.
+     */
+    public Set<String> match(String message) {
+        if (message == null || message.isEmpty()) {
+            return Set.of();
+        }
+
+        char[] text = normalize(message).toCharArray();
+        boolean[] found = new boolean[categories.size()];
+        int state = 0;
+        for (int i = 0; i < text.length; i++) {
+            state = next(state, text[i]);
+            for (int keyword : outputs.get(state)) {
+                int start = i - keywordLengths.get(keyword) + 1;
+                if (start == 0 || text[start - 1] == ' ') {
+                    found[keywordCategories.get(keyword)] = true;
+                }
+            }
+        }
+
+        Set<String> matched = new LinkedHashSet<>();
+        for (int category = 0; category < found.length; category++) {
+            if (found[category]) {
+                matched.add(categories.get(category));
+            }
+        }
+        return matched;
+    }
+
+    public boolean isEmotionRelated(String message) {
+        return !match(message).isEmpty();
+    }
+
+    /**
+     * Minúsculas sin tildes, con los signos y espacios repetidos reducidos a un espacio.
+     */
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean lastWasSpace = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char folded = c < FOLD.length ? FOLD[c] : (Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ');
+            if (folded == ' ') {
+                if (!lastWasSpace) {
+                    normalized.append(' ');
+                }
+                lastWasSpace = true;
+            } else {
+                normalized.append(folded);
+                lastWasSpace = false;
+            }
+        }
+        int end = normalized.length();
+        return end > 0 && normalized.charAt(end - 1) == ' ' ? normalized.substring(0, end - 1) : normalized.toString();
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            Integer target = transitions.get(state).get(c);
+            if (target != null) {
+                return target;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failure.get(state);
+        }
+    }
+
+    private int newNode() {
+        transitions.add(new HashMap<>());
+        failure.add(0);
+        outputs.add(new int[0]);
+        return transitions.size() - 1;
+    }
+
+    private void addKeyword(String keyword, int category) {
+        int state = 0;
+        for (char c : keyword.toCharArray()) {
+            Integer target = transitions.get(state).get(c);
+            if (target == null) {
+                target = newNode();
+                transitions.get(state).put(c, target);
+            }
+            state = target;
+        }
+
+        int index = keywordLengths.size();
+        keywordLengths.add(keyword.length());
+        keywordCategories.add(category);
+        outputs.set(state, append(outputs.get(state), index));
+    }
+
+    // Recorrido en anchura: el fallo de cada nodo es el sufijo más largo que también es prefijo
+    private void buildFailureLinks() {
+        ArrayDeque<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> transition : transitions.get(state).entrySet()) {
+                int child = transition.getValue();
+                int fallback = state == 0 ? 0 : next(failure.get(state), transition.getKey());
+                failure.set(child, fallback);
+                for (int keyword : outputs.get(fallback)) {
+                    outputs.set(child, append(outputs.get(child), keyword));
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    private static int[] append(int[] values, int value) {
+        int[] extended = Arrays.copyOf(values, values.length + 1);
+        extended[values.length] = value;
+        return extended;
+    }
+
+    private static Map<String, List<String>> toLists(Map<String, String[]> vocabulary) {
+        Map<String, List<String>> lists = new LinkedHashMap<>();
+        vocabulary.forEach((category, keywords) -> lists.put(category, List.of(keywords)));
+        return lists;
+    }
+
+    // Las mismas palabras que la detección anterior, agrupadas por categoría. Ampliarlas hace que
+    // más mensajes lleven el historial emocional privado y queden fuera de la caché de respuestas.
+    private static Map<String, List<String>> defaultVocabulary() {
+        Map<String, List<String>> vocabulary = new LinkedHashMap<>();
+        vocabulary.put("general", List.of("emo", "sentimiento", "como me siento", "diario", "estado de animo", "animo"));
+        vocabulary.put("tristeza", List.of("triste"));
+        vocabulary.put("alegria", List.of("feliz"));
+        vocabulary.put("enojo", List.of("enojado"));
+        vocabulary.put("miedo", List.of("asustado"));
+        vocabulary.put("calma", List.of("calma"));
+        vocabulary.put("sorpresa", List.of("sorpresa"));
+        return Collections.unmodifiableMap(vocabulary);
+    }
+}
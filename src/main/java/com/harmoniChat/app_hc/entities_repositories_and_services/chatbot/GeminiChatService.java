@@ -1,24 +1,53 @@
 package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
+@Slf4j
 @Service
 public class GeminiChatService {
 
-    private static final String GEMINI_ENDPOINT = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent?key=";
+    private static final String NO_RESPONSE = "No pude generar una respuesta. ¿Podrías reformular tu pregunta?";
 
-    private final String apiKey;
-    private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper;
+    // Marca del contexto emocional personal que agrega ChatBotController; esas respuestas no se cachean
+    public static final String EMOTION_CONTEXT_MARKER = "[Contexto emocional del usuario]";
+
+    private final GeminiClient geminiClient;
+    private final GeminiContextCache contextCache;
+    private final ChatHistoryBudget historyBudget;
+    private final Timer timeToFirstToken;
+    private final DistributionSummary requestTokens;
+    private final boolean responseCacheEnabled;
+    private final AsyncCache<String, String> responseCache;
 
     private static final String SYSTEM_PROMPT = """
     Eres HarmoniBot, el asistente emocional familiar diseñado para fortalecer vínculos, promover la salud mental y mejorar la comunicación familiar. Tu rol es ser empático, comprensivo y proactivo en el apoyo al bienestar emocional de los usuarios.
@@ -138,107 +167,291 @@ public class GeminiChatService {
     Recuerda: Tu objetivo final es ser un puente emocional que fortalezca los lazos familiares mediante herramientas prácticas, recursos valiosos y acompañamiento empático.
     """;
 
-    public GeminiChatService(@Value("${spring.gemini.api.key}") String apiKey) {
-        this.apiKey = apiKey;
-        this.restTemplate = new RestTemplate();
-        this.objectMapper = new ObjectMapper();
-    }
-
-    private static final int MAX_RETRIES = 3;
-    private static final long INITIAL_BACKOFF_MS = 1000; // 1 second
-
-    public String getChatResponse(String userMessage, List<ChatMessage> history) {
-        int retryCount = 0;
-        long backoffTime = INITIAL_BACKOFF_MS;
-
-        while (retryCount <= MAX_RETRIES) {
-            try {
-                GeminiRequest request = buildGeminiRequest(userMessage, history);
-                HttpHeaders headers = new HttpHeaders();
-                headers.setContentType(MediaType.APPLICATION_JSON);
-
-                ResponseEntity<GeminiResponse> response = restTemplate.exchange(
-                        GEMINI_ENDPOINT + apiKey,
-                        HttpMethod.POST,
-                        new HttpEntity<>(request, headers),
-                        GeminiResponse.class
-                );
-
-                return extractResponseText(response);
-            } catch (HttpClientErrorException.TooManyRequests e) {
-                retryCount++;
-                if (retryCount > MAX_RETRIES) {
-                    throw new RuntimeException("Demasiadas solicitudes. Por favor intente más tarde.", e);
-                }
+    // Va en systemInstruction (o en la caché de contexto), no como un turno más del usuario
+    private static final GeminiContent SYSTEM_INSTRUCTION = new GeminiContent(null, List.of(new GeminiPart(SYSTEM_PROMPT)));
 
-                // Parse retry-after header or use exponential backoff
-                try {
-                    Thread.sleep(backoffTime);
-                    backoffTime *= 2; // Exponential backoff
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException("Interrupción durante el reintento", ie);
-                }
-            } catch (Exception e) {
-                throw new RuntimeException("Error al comunicarse con Gemini API", e);
-            }
+    private static final GeminiContent SUMMARY_INSTRUCTION = new GeminiContent(null, List.of(new GeminiPart(
+            "Resume en español y en un máximo de 150 palabras la conversación entre un usuario y HarmoniBot. "
+                    + "Conserva emociones, situaciones familiares, nombres y sugerencias ya dadas. "
+                    + "Responde solo con el resumen.")));
+
+    public GeminiChatService(GeminiClient geminiClient,
+                             GeminiContextCache contextCache,
+                             ChatHistoryBudget historyBudget,
+                             MeterRegistry meterRegistry,
+                             @Value("${harmonichat.gemini.response-cache.enabled:true}") boolean responseCacheEnabled,
+                             @Value("${harmonichat.gemini.response-cache.max-entries:1000}") long responseCacheMaxEntries,
+                             @Value("${harmonichat.gemini.response-cache.ttl:1h}") Duration responseCacheTtl) {
+        this.geminiClient = geminiClient;
+        this.contextCache = contextCache;
+        this.historyBudget = historyBudget;
+        this.requestTokens = DistributionSummary.builder("gemini.request.tokens")
+                .description("Tokens estimados enviados por petición")
+                .register(meterRegistry);
+        this.timeToFirstToken = Timer.builder("chatbot.time_to_first_token")
+                .description("Tiempo hasta el primer fragmento de una respuesta en streaming")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+
+        this.responseCacheEnabled = responseCacheEnabled;
+        this.responseCache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(responseCacheMaxEntries)
+                .expireAfterWrite(responseCacheTtl)
+                .recordStats()
+                .<String, String>buildAsync(), "gemini.responses");
+        Gauge.builder("gemini.responses.hit_ratio", responseCache, cache -> cache.synchronous().stats().hitRate())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Respuesta completa sin bloquear: los reintentos por 429/503 los hace {@link GeminiClient}
+     * con temporizadores, no con el hilo de quien llama.
+     *
+     * <p>Las respuestas se cachean por el hash normalizado del mensaje y el historial, y las
+     * peticiones idénticas en curso comparten una sola llamada a Gemini. No se cachea nada que
+     * lleve contexto emocional del usuario.</p>
+     */
+    public Mono<String> chatResponse(String userMessage, List<ChatMessage> history) {
+        if (!responseCacheEnabled || carriesEmotionContext(userMessage, history)) {
+            return generate(userMessage, history);
         }
-        return "Lo siento, estoy experimentando alta demanda. Por favor inténtalo de nuevo más tarde.";
+
+        String key = cacheKey(userMessage, history);
+        // suppressCancel: si un suscriptor cancela, la llamada compartida sigue para los demás
+        // El contexto (familia para el límite de llamadas salientes) se pasa a la llamada compartida
+        return Mono.deferContextual(context -> Mono.fromFuture(() -> responseCache.get(key,
+                        (k, executor) -> generate(userMessage, history).contextWrite(context).toFuture()), true))
+                .doOnNext(text -> {
+                    if (NO_RESPONSE.equals(text)) {
+                        responseCache.synchronous().invalidate(key);
+                    }
+                });
+    }
+
+    private Mono<String> generate(String userMessage, List<ChatMessage> history) {
+        return withSystemInstruction(userMessage, history, request -> geminiClient.generateContent(request))
+                .next()
+                .map(GeminiChatService::extractResponseText)
+                .defaultIfEmpty(NO_RESPONSE)
+                .onErrorMap(GeminiChatService::toServiceError);
     }
 
-    private String extractResponseText(ResponseEntity<GeminiResponse> response) {
-        if (response.getBody() == null || response.getBody().candidates.isEmpty()) {
-            return "No pude generar una respuesta. ¿Podrías reformular tu pregunta?";
+    /**
+     * Resume una conversación para compactar el historial: combina el resumen anterior (si
+     * lo hay) con los turnos indicados. Usa su propia instrucción, no la de HarmoniBot.
+     */
+    public Mono<String> summarize(String previousSummary, List<ChatMessage> turns) {
+        StringBuilder transcript = new StringBuilder();
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            transcript.append("Resumen previo:\n").append(previousSummary).append("\n\n");
         }
-        return response.getBody().candidates.get(0).content.parts.get(0).text;
+        transcript.append("Conversación:\n");
+        turns.forEach(turn -> transcript.append(turn.getRole()).append(": ").append(turn.getContent()).append("\n"));
+
+        GeminiRequest request = GeminiRequest.withSystemInstruction(
+                List.of(new GeminiContent("user", List.of(new GeminiPart(transcript.toString())))),
+                SUMMARY_INSTRUCTION);
+        requestTokens.record(request.estimatedTokens());
+
+        return geminiClient.generateContent(request)
+                .map(GeminiChatService::chunkText)
+                .filter(text -> !text.isBlank())
+                .onErrorMap(GeminiChatService::toServiceError);
     }
 
-    private GeminiRequest buildGeminiRequest(String userMessage, List<ChatMessage> history) {
-        List<GeminiContent> contents = new ArrayList<>();
+    /**
+     * Respuesta en streaming: emite cada fragmento de texto en cuanto Gemini lo genera
+     * (streamGenerateContent con SSE). No bloquea el hilo que se suscribe.
+     */
+    public Flux<String> streamChatResponse(String userMessage, List<ChatMessage> history) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean(true);
 
-        // 1. System prompt
-        contents.add(new GeminiContent("user", List.of(new GeminiPart(SYSTEM_PROMPT))));
+            return withSystemInstruction(userMessage, history, geminiClient::streamGenerateContent)
+                    .map(GeminiChatService::chunkText)
+                    .filter(text -> !text.isEmpty())
+                    .doOnNext(text -> {
+                        if (firstToken.compareAndSet(true, false)) {
+                            timeToFirstToken.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .onErrorMap(GeminiChatService::toServiceError);
+        });
+    }
+
+    /**
+     * Ejecuta la llamada con la instrucción de sistema en caché si está disponible. Si Gemini
+     * ya no reconoce el contenido en caché, se descarta y se repite con la instrucción completa.
+     */
+    private <T> Flux<T> withSystemInstruction(String userMessage, List<ChatMessage> history,
+                                              Function<GeminiRequest, Publisher<T>> call) {
+        List<GeminiContent> contents = buildContents(userMessage, history);
+
+        return contextCache.cachedContentName(SYSTEM_INSTRUCTION)
+                .map(cachedContent -> GeminiRequest.withCachedContent(contents, cachedContent))
+                .defaultIfEmpty(GeminiRequest.withSystemInstruction(contents, SYSTEM_INSTRUCTION))
+                .flatMapMany(request -> {
+                    requestTokens.record(request.estimatedTokens());
+                    Flux<T> response = Flux.from(call.apply(request));
+                    if (request.cachedContent == null) {
+                        return response;
+                    }
+                    return response.onErrorResume(GeminiChatService::isStaleCache, error -> {
+                        log.warn("Caché de contexto {} rechazada, se reenvía la instrucción completa", request.cachedContent);
+                        contextCache.invalidate();
+                        return Flux.from(call.apply(GeminiRequest.withSystemInstruction(contents, SYSTEM_INSTRUCTION)));
+                    });
+                });
+    }
+
+    private static boolean carriesEmotionContext(String userMessage, List<ChatMessage> history) {
+        if (userMessage != null && userMessage.contains(EMOTION_CONTEXT_MARKER)) {
+            return true;
+        }
+        return history != null && history.stream()
+                .anyMatch(turn -> turn.getContent() != null && turn.getContent().contains(EMOTION_CONTEXT_MARKER));
+    }
 
-        // 2. Conversation history
+    // Hash del mensaje y el historial sin diferencias de mayúsculas ni espacios
+    static String cacheKey(String userMessage, List<ChatMessage> history) {
+        StringBuilder normalized = new StringBuilder();
         if (history != null) {
-            history.forEach(msg -> contents.add(msg.toGeminiContent()));
+            history.forEach(turn -> normalized.append(turn.getRole()).append('\u0000')
+                    .append(normalize(turn.getContent())).append('\u0001'));
         }
+        normalized.append(normalize(userMessage));
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isStaleCache(Throwable error) {
+        return error instanceof WebClientResponseException response
+                && (response.getStatusCode().value() == HttpStatus.NOT_FOUND.value()
+                || response.getStatusCode().value() == HttpStatus.FORBIDDEN.value());
+    }
 
-        // 3. Current user message
+    private static Throwable toServiceError(Throwable error) {
+        if (GeminiClient.isRetryable(error) || error instanceof OutboundApiGovernor.RejectedException) {
+            return new RuntimeException("Demasiadas solicitudes. Por favor intente más tarde.", error);
+        }
+        if (error instanceof WebClientException) {
+            return new RuntimeException("Error al comunicarse con Gemini API", error);
+        }
+        return error;
+    }
+
+    // Un fragmento de la respuesta en streaming; el último puede traer solo finishReason
+    private static String chunkText(GeminiResponse chunk) {
+        if (chunk.candidates == null || chunk.candidates.isEmpty()) {
+            return "";
+        }
+        GeminiContent content = chunk.candidates.get(0).content;
+        if (content == null || content.parts == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        content.parts.forEach(part -> {
+            if (part.text != null) {
+                text.append(part.text);
+            }
+        });
+        return text.toString();
+    }
+
+    private static String extractResponseText(GeminiResponse response) {
+        String text = chunkText(response);
+        return text.isEmpty() ? NO_RESPONSE : text;
+    }
+
+    private List<GeminiContent> buildContents(String userMessage, List<ChatMessage> history) {
+        List<GeminiContent> contents = new ArrayList<>();
+
+        // 1. Historial recortado al presupuesto de tokens
+        historyBudget.fit(history).forEach(msg -> contents.add(msg.toGeminiContent()));
+
+        // 2. Mensaje actual del usuario
         contents.add(new GeminiContent("user", List.of(new GeminiPart(userMessage))));
 
-        return new GeminiRequest(contents);
+        return contents;
     }
 
     // DTOs internos manteniendo tu estructura existente
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class GeminiRequest {
         public List<GeminiContent> contents;
+        public GeminiContent systemInstruction;
+        public String cachedContent;
         public GeminiRequest(List<GeminiContent> contents) {
             this.contents = contents;
         }
+
+        static GeminiRequest withSystemInstruction(List<GeminiContent> contents, GeminiContent systemInstruction) {
+            GeminiRequest request = new GeminiRequest(contents);
+            request.systemInstruction = systemInstruction;
+            return request;
+        }
+
+        static GeminiRequest withCachedContent(List<GeminiContent> contents, String cachedContent) {
+            GeminiRequest request = new GeminiRequest(contents);
+            request.cachedContent = cachedContent;
+            return request;
+        }
+
+        int estimatedTokens() {
+            int tokens = systemInstruction != null ? systemInstruction.estimatedTokens() : 0;
+            for (GeminiContent content : contents) {
+                tokens += content.estimatedTokens();
+            }
+            return tokens;
+        }
     }
 
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class GeminiContent {
         public String role;
         public List<GeminiPart> parts;
+        public GeminiContent() {
+        }
         public GeminiContent(String role, List<GeminiPart> parts) {
             this.role = role;
             this.parts = parts;
         }
+
+        int estimatedTokens() {
+            int tokens = 0;
+            if (parts != null) {
+                for (GeminiPart part : parts) {
+                    tokens += ChatHistoryBudget.estimateTokens(part.text);
+                }
+            }
+            return tokens;
+        }
     }
 
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class GeminiPart {
         public String text;
+        public GeminiPart() {
+        }
         public GeminiPart(String text) {
             this.text = text;
         }
     }
 
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class GeminiResponse {
         public List<Candidate> candidates;
+        @JsonIgnoreProperties(ignoreUnknown = true)
         public static class Candidate {
             public GeminiContent content;
         }
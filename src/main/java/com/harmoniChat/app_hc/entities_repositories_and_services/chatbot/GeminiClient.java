@@ -0,0 +1,198 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor.Provider;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cliente HTTP no bloqueante de la API de Gemini, compartido por el chatbot y los álbumes.
+ *
+ * <p>Usa un pool de conexiones propio con tiempos máximos de conexión, respuesta y espera
+ * de conexión libre. Las respuestas 429 y 503 se reintentan respetando {@code Retry-After}
+ * (o con backoff exponencial si no viene) mediante temporizadores de Reactor, sin dormir
+ * el hilo que hizo la llamada. Cada intento pasa por {@link OutboundApiGovernor}.</p>
+ */
+@Slf4j
+@Component
+public class GeminiClient {
+
+    private static final String API_URL = "https://generativelanguage.googleapis.com/v1beta";
+    private static final String MODEL = "models/gemini-2.0-flash";
+
+    private final WebClient webClient;
+    private final OutboundApiGovernor governor;
+    private final int maxRetries;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Counter retries;
+    private final Timer generateLatency;
+    private final Timer streamLatency;
+
+    public GeminiClient(
+            WebClient.Builder webClientBuilder,
+            MeterRegistry meterRegistry,
+            OutboundApiGovernor governor,
+            @Value("${spring.gemini.api.key}") String apiKey,
+            @Value("${harmonichat.gemini.client.max-connections:50}") int maxConnections,
+            @Value("${harmonichat.gemini.client.connect-timeout:5s}") Duration connectTimeout,
+            @Value("${harmonichat.gemini.client.response-timeout:60s}") Duration responseTimeout,
+            @Value("${harmonichat.gemini.client.pending-acquire-timeout:10s}") Duration pendingAcquireTimeout,
+            @Value("${harmonichat.gemini.client.max-retries:3}") int maxRetries,
+            @Value("${harmonichat.gemini.client.initial-backoff:1s}") Duration initialBackoff,
+            @Value("${harmonichat.gemini.client.max-backoff:30s}") Duration maxBackoff) {
+
+        ConnectionProvider pool = ConnectionProvider.builder("gemini")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(Duration.ofSeconds(30))
+                .evictInBackground(Duration.ofSeconds(60))
+                .build();
+        HttpClient httpClient = HttpClient.create(pool)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(responseTimeout);
+
+        this.webClient = webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .baseUrl(API_URL)
+                .defaultHeader("x-goog-api-key", apiKey)
+                .build();
+        this.governor = governor;
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retries = Counter.builder("gemini.client.retries").register(meterRegistry);
+        this.generateLatency = Timer.builder("gemini.client.latency").tag("operation", "generate")
+                .publishPercentiles(0.5, 0.95).register(meterRegistry);
+        this.streamLatency = Timer.builder("gemini.client.latency").tag("operation", "stream")
+                .publishPercentiles(0.5, 0.95).register(meterRegistry);
+    }
+
+    public Mono<GeminiChatService.GeminiResponse> generateContent(GeminiChatService.GeminiRequest request) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return governor.call(Provider.GEMINI, () -> webClient.post()
+                            .uri("/" + MODEL + ":generateContent")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(request)
+                            .retrieve()
+                            .bodyToMono(GeminiChatService.GeminiResponse.class))
+                    .retryWhen(retryPolicy())
+                    .doFinally(signal -> generateLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * Crea un contenido en caché (cachedContents) con la instrucción de sistema y devuelve
+     * su nombre para usarlo en {@code cachedContent}.
+     */
+    public Mono<String> createCachedContent(GeminiChatService.GeminiContent systemInstruction, Duration ttl) {
+        Map<String, Object> body = Map.of(
+                "model", MODEL,
+                "systemInstruction", systemInstruction,
+                "ttl", ttl.toSeconds() + "s");
+
+        return governor.call(Provider.GEMINI, () -> webClient.post()
+                        .uri("/cachedContents")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(body)
+                        .retrieve()
+                        .bodyToMono(CachedContent.class))
+                .map(CachedContent::name);
+    }
+
+    /**
+     * Respuesta por fragmentos (SSE). Los 429/503 llegan antes del primer fragmento, así
+     * que reintentarlos no duplica texto ya emitido.
+     */
+    public Flux<GeminiChatService.GeminiResponse> streamGenerateContent(GeminiChatService.GeminiRequest request) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return governor.stream(Provider.GEMINI, () -> webClient.post()
+                            .uri("/" + MODEL + ":streamGenerateContent?alt=sse")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .bodyValue(request)
+                            .retrieve()
+                            .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<GeminiChatService.GeminiResponse>>() {}))
+                    .map(ServerSentEvent::data)
+                    .filter(Objects::nonNull)
+                    .retryWhen(retryPolicy())
+                    .doFinally(signal -> streamLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private Retry retryPolicy() {
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            Throwable error = signal.failure();
+            long attempt = signal.totalRetries();
+            if (!isRetryable(error) || attempt >= maxRetries) {
+                return Mono.error(error);
+            }
+
+            Duration delay = retryAfter((WebClientResponseException) error)
+                    .orElse(initialBackoff.multipliedBy(1L << attempt));
+            if (delay.compareTo(maxBackoff) > 0) {
+                delay = maxBackoff;
+            }
+            retries.increment();
+            log.warn("Gemini respondió {}, reintento {} en {} ms",
+                    ((WebClientResponseException) error).getStatusCode(), attempt + 1, delay.toMillis());
+            return Mono.delay(delay);
+        }));
+    }
+
+    static boolean isRetryable(Throwable error) {
+        return error instanceof WebClientResponseException response
+                && (response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()
+                || response.getStatusCode().value() == HttpStatus.SERVICE_UNAVAILABLE.value());
+    }
+
+    private record CachedContent(String name) {}
+
+    // Retry-After puede venir en segundos o como fecha HTTP
+    static Optional<Duration> retryAfter(WebClientResponseException error) {
+        String value = error.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Duration.ofSeconds(Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration delay = Duration.between(ZonedDateTime.now(date.getZone()), date);
+                return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+            } catch (DateTimeParseException ignored) {
+                return Optional.empty();
+            }
+        }
+    }
+}
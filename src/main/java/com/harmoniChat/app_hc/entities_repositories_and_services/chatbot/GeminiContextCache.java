@@ -0,0 +1,96 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Caché de contexto de Gemini (cachedContents) para la instrucción de sistema del chatbot
+ * (opcional, {@code harmonichat.gemini.context-cache.enabled}).
+ *
+ * <p>La instrucción se sube una vez y las peticiones solo envían el nombre del contenido en
+ * caché. Se renueva antes de que venza su TTL. Si la API rechaza la creación (por ejemplo,
+ * por no alcanzar el mínimo de tokens del modelo) se sigue enviando la instrucción completa y
+ * no se vuelve a intentar hasta pasado {@code retry-after-failure}.</p>
+ */
+@Slf4j
+@Component
+public class GeminiContextCache {
+
+    private static final Duration REFRESH_MARGIN = Duration.ofMinutes(5);
+
+    private final GeminiClient geminiClient;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Duration retryAfterFailure;
+
+    private volatile CachedInstruction current;
+    private volatile Instant disabledUntil = Instant.MIN;
+    private Mono<String> pending;
+
+    public GeminiContextCache(
+            GeminiClient geminiClient,
+            @Value("${harmonichat.gemini.context-cache.enabled:false}") boolean enabled,
+            @Value("${harmonichat.gemini.context-cache.ttl:1h}") Duration ttl,
+            @Value("${harmonichat.gemini.context-cache.retry-after-failure:10m}") Duration retryAfterFailure) {
+        this.geminiClient = geminiClient;
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.retryAfterFailure = retryAfterFailure;
+    }
+
+    /**
+     * Nombre del contenido en caché con la instrucción de sistema, o vacío si la caché está
+     * desactivada o no disponible. Varias llamadas simultáneas comparten una sola creación.
+     */
+    public Mono<String> cachedContentName(GeminiChatService.GeminiContent systemInstruction) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+
+        Instant now = Instant.now();
+        CachedInstruction cached = current;
+        if (cached != null && cached.expiresAt().minus(REFRESH_MARGIN).isAfter(now)) {
+            return Mono.just(cached.name());
+        }
+        if (now.isBefore(disabledUntil)) {
+            return Mono.empty();
+        }
+
+        synchronized (this) {
+            if (pending == null) {
+                pending = geminiClient.createCachedContent(systemInstruction, ttl)
+                        .doOnNext(name -> {
+                            current = new CachedInstruction(name, now.plus(ttl));
+                            log.info("Instrucción de sistema en caché de contexto: {}", name);
+                        })
+                        .onErrorResume(error -> {
+                            disabledUntil = Instant.now().plus(retryAfterFailure);
+                            log.warn("No se pudo crear la caché de contexto, se envía la instrucción completa: {}",
+                                    error.getMessage());
+                            return Mono.empty();
+                        })
+                        .doFinally(signal -> clearPending())
+                        .cache();
+            }
+            return pending;
+        }
+    }
+
+    /**
+     * Descarta el contenido en caché (por ejemplo, si Gemini ya no lo reconoce).
+     */
+    public void invalidate() {
+        current = null;
+    }
+
+    private synchronized void clearPending() {
+        pending = null;
+    }
+
+    private record CachedInstruction(String name, Instant expiresAt) {}
+}
@@ -17,11 +17,14 @@ import java.util.UUID;
 public class EmotionService {
     private final EmotionRepository emotionRepository;
     private final BlobStorageService blobStorageService;
+    private final EmotionSummaryService summaryService;
 
     @Autowired
-    public EmotionService(EmotionRepository emotionRepository, BlobStorageService blobStorageService) {
+    public EmotionService(EmotionRepository emotionRepository, BlobStorageService blobStorageService,
+                          EmotionSummaryService summaryService) {
         this.emotionRepository = emotionRepository;
         this.blobStorageService = blobStorageService;
+        this.summaryService = summaryService;
     }
 
     public List<Emotion> getAllEmotions() {
@@ -38,11 +41,15 @@ public class EmotionService {
             String fileUrl = blobStorageService.uploadFile(file, BlobContainerType.EMOTIONS);
             emotion.setFilesURL(fileUrl);
         }
-        return emotionRepository.save(emotion);
+        Emotion saved = emotionRepository.save(emotion);
+        summaryService.onSaved(saved);
+        return saved;
     }
 
     public Emotion save(Emotion emotion) {
-        return emotionRepository.save(emotion);
+        Emotion saved = emotionRepository.save(emotion);
+        summaryService.onSaved(saved);
+        return saved;
     }
 
     public boolean existsById(UUID id) {
@@ -54,6 +61,8 @@ public class EmotionService {
     }
 
     public void deleteById(UUID id) {
+        // Se necesita el usuario para actualizar su resumen
+        emotionRepository.findById(id).ifPresent(summaryService::onDeleted);
         emotionRepository.deleteById(id);
     }
 }
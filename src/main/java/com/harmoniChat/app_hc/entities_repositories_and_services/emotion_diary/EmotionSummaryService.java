@@ -0,0 +1,187 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.emotion_diary;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Resumen emocional por usuario para el contexto del chatbot: cuántas veces registró cada
+ * emoción, sus últimas entradas y la tendencia reciente.
+ *
+ * <p>El resumen se carga una vez desde la base de datos y después se mantiene al crear,
+ * editar o borrar emociones, así cada turno del chatbot es una sola consulta en memoria.
+ * Las entradas caducan tras {@code expiry} para recoger cambios hechos en otras réplicas.</p>
+ */
+@Service
+public class EmotionSummaryService {
+
+    private static final UUID FIRST_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+    private static final Comparator<Entry> BY_DATE = Comparator.comparing(Entry::date).thenComparing(Entry::id);
+
+    private final EmotionRepository emotionRepository;
+    private final int recentEntries;
+    private final Duration trendWindow;
+    private final Cache<UUID, UserEmotions> summaries;
+
+    public EmotionSummaryService(
+            EmotionRepository emotionRepository,
+            MeterRegistry meterRegistry,
+            @Value("${harmonichat.chatbot.emotion-summary.max-users:10000}") long maxUsers,
+            @Value("${harmonichat.chatbot.emotion-summary.recent-entries:3}") int recentEntries,
+            @Value("${harmonichat.chatbot.emotion-summary.trend-window:7d}") Duration trendWindow,
+            @Value("${harmonichat.chatbot.emotion-summary.expiry:1h}") Duration expiry) {
+        this.emotionRepository = emotionRepository;
+        this.recentEntries = recentEntries;
+        this.trendWindow = trendWindow;
+        this.summaries = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(expiry)
+                .recordStats()
+                .<UUID, UserEmotions>build(), "emotion.summaries");
+    }
+
+    /**
+     * Resumen actual del usuario; solo consulta la base de datos si no está en memoria.
+     */
+    public EmotionSummary summary(UUID userId) {
+        return summaries.get(userId, this::load).snapshot();
+    }
+
+    /**
+     * Registra una emoción creada o editada (el nombre o la fecha pueden haber cambiado).
+     */
+    public void onSaved(Emotion emotion) {
+        if (emotion == null || emotion.getId() == null || emotion.getUserId() == null) {
+            return;
+        }
+        UserEmotions emotions = summaries.getIfPresent(emotion.getUserId());
+        if (emotions != null) {
+            emotions.put(Entry.of(emotion));
+        }
+    }
+
+    public void onDeleted(Emotion emotion) {
+        if (emotion == null || emotion.getUserId() == null) {
+            return;
+        }
+        UserEmotions emotions = summaries.getIfPresent(emotion.getUserId());
+        if (emotions != null) {
+            emotions.remove(emotion.getId());
+        }
+    }
+
+    private UserEmotions load(UUID userId) {
+        UserEmotions emotions = new UserEmotions();
+        emotionRepository.findByUserIdOrderByCreationDateDesc(userId)
+                .forEach(emotion -> emotions.put(Entry.of(emotion)));
+        return emotions;
+    }
+
+    /**
+     * Vista inmutable del resumen. {@code trend} es, por emoción, los registros del último
+     * periodo menos los del periodo anterior.
+     */
+    public record EmotionSummary(Map<String, Integer> counts, List<RecentEmotion> recent, Map<String, Integer> trend) {
+
+        public boolean isEmpty() {
+            return counts.isEmpty();
+        }
+    }
+
+    public record RecentEmotion(LocalDate date, String name, String description) {}
+
+    private record Entry(UUID id, String name, String description, LocalDateTime date) {
+        static Entry of(Emotion emotion) {
+            LocalDateTime date = emotion.getCreationDate() != null ? emotion.getCreationDate() : LocalDateTime.now();
+            String name = emotion.getName() != null ? emotion.getName() : "Sin nombre";
+            return new Entry(emotion.getId(), name, emotion.getDescription(), date);
+        }
+    }
+
+    /**
+     * Emociones de un usuario con los conteos mantenidos en cada cambio. El resumen se
+     * recalcula solo tras un cambio o al cambiar de día (por la ventana de tendencia).
+     */
+    private final class UserEmotions {
+        private final Map<UUID, Entry> byId = new HashMap<>();
+        private final NavigableSet<Entry> byDate = new TreeSet<>(BY_DATE);
+        private final Map<String, Integer> counts = new HashMap<>();
+        private EmotionSummary snapshot;
+        private LocalDate snapshotDay;
+
+        synchronized void put(Entry entry) {
+            Entry previous = byId.put(entry.id(), entry);
+            if (previous != null) {
+                byDate.remove(previous);
+                decrement(previous.name());
+            }
+            byDate.add(entry);
+            counts.merge(entry.name(), 1, Integer::sum);
+            snapshot = null;
+        }
+
+        synchronized void remove(UUID id) {
+            Entry previous = byId.remove(id);
+            if (previous != null) {
+                byDate.remove(previous);
+                decrement(previous.name());
+                snapshot = null;
+            }
+        }
+
+        private void decrement(String name) {
+            counts.computeIfPresent(name, (key, count) -> count > 1 ? count - 1 : null);
+        }
+
+        synchronized EmotionSummary snapshot() {
+            LocalDate today = LocalDate.now();
+            if (snapshot == null || !today.equals(snapshotDay)) {
+                snapshot = build(LocalDateTime.now());
+                snapshotDay = today;
+            }
+            return snapshot;
+        }
+
+        private EmotionSummary build(LocalDateTime now) {
+            List<RecentEmotion> recent = byDate.descendingSet().stream()
+                    .limit(recentEntries)
+                    .map(entry -> new RecentEmotion(entry.date().toLocalDate(), entry.name(), entry.description()))
+                    .toList();
+
+            // Solo se recorren las entradas de los dos últimos periodos
+            LocalDateTime currentStart = now.minus(trendWindow);
+            LocalDateTime previousStart = currentStart.minus(trendWindow);
+            Map<String, Integer> trend = new LinkedHashMap<>();
+            for (Entry entry : byDate.tailSet(new Entry(FIRST_ID, null, null, previousStart), true)) {
+                int delta = entry.date().isBefore(currentStart) ? -1 : 1;
+                trend.merge(entry.name(), delta, Integer::sum);
+            }
+            trend.values().removeIf(delta -> delta == 0);
+
+            // Las más frecuentes primero
+            Map<String, Integer> sortedCounts = new LinkedHashMap<>();
+            counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .forEach(count -> sortedCounts.put(count.getKey(), count.getValue()));
+
+            return new EmotionSummary(Collections.unmodifiableMap(sortedCounts), recent,
+                    Collections.unmodifiableMap(trend));
+        }
+    }
+}
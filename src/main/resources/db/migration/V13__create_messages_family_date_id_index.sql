@@ -0,0 +1,7 @@
+-- Índice compuesto para la paginación por cursor (keyset) del historial del chat.
+-- Cubre "WHERE family_id = ? AND (date, id) < (?, ?) ORDER BY date DESC, id DESC LIMIT ?"
+-- sin ordenar en memoria; Postgres lo recorre hacia atrás para el orden descendente.
+CREATE INDEX IF NOT EXISTS idx_messages_family_date_id ON messages(family_id, date, id);
+
+-- idx_messages_family queda cubierto por el prefijo del nuevo índice
+DROP INDEX IF EXISTS idx_messages_family;
@@ -0,0 +1,48 @@
+-- Número de secuencia monótono por familia para la sincronización incremental del chat
+ALTER TABLE messages
+    ADD COLUMN seq BIGINT;
+
+-- Numerar los mensajes existentes en orden cronológico dentro de cada familia
+UPDATE messages m
+SET seq = numbered.rn
+FROM (
+         SELECT id, ROW_NUMBER() OVER (PARTITION BY family_id ORDER BY date, id) AS rn
+         FROM messages
+     ) numbered
+WHERE m.id = numbered.id;
+
+-- Último número asignado por familia
+CREATE TABLE family_message_sequences (
+                                          family_id UUID PRIMARY KEY,
+                                          last_seq BIGINT NOT NULL,
+                                          FOREIGN KEY (family_id) REFERENCES families(id) ON DELETE CASCADE
+);
+
+INSERT INTO family_message_sequences (family_id, last_seq)
+SELECT family_id, MAX(seq)
+FROM messages
+GROUP BY family_id;
+
+-- Asignar el siguiente número al insertar. El bloqueo de la fila del contador se mantiene
+-- hasta el commit, así que dentro de una familia los números quedan visibles en orden.
+CREATE OR REPLACE FUNCTION assign_message_seq()
+RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO family_message_sequences (family_id, last_seq)
+    VALUES (NEW.family_id, 1)
+    ON CONFLICT (family_id) DO UPDATE
+        SET last_seq = family_message_sequences.last_seq + 1
+    RETURNING last_seq INTO NEW.seq;
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER set_message_seq
+    BEFORE INSERT ON messages
+    FOR EACH ROW
+    EXECUTE FUNCTION assign_message_seq();
+
+ALTER TABLE messages
+    ALTER COLUMN seq SET NOT NULL;
+
+CREATE UNIQUE INDEX idx_messages_family_seq ON messages(family_id, seq);
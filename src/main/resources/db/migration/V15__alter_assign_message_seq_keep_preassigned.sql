@@ -0,0 +1,17 @@
+-- La escritura diferida del chat reserva bloques de números en family_message_sequences
+-- y envía el seq ya asignado; el trigger solo numera las filas que llegan sin seq.
+CREATE OR REPLACE FUNCTION assign_message_seq()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW.seq IS NOT NULL THEN
+        RETURN NEW;
+    END IF;
+
+    INSERT INTO family_message_sequences (family_id, last_seq)
+    VALUES (NEW.family_id, 1)
+    ON CONFLICT (family_id) DO UPDATE
+        SET last_seq = family_message_sequences.last_seq + 1
+    RETURNING last_seq INTO NEW.seq;
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
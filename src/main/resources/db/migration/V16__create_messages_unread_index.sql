@@ -0,0 +1,3 @@
+-- Índice parcial para marcar como leídos los mensajes pendientes con un solo UPDATE
+CREATE INDEX IF NOT EXISTS idx_messages_sent_by_family_user ON messages(family_id, user_id, seq)
+    WHERE state = 'SENT';
@@ -0,0 +1,26 @@
+CREATE TABLE chat_read_state (
+                                 id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+                                 family_id UUID NOT NULL,
+                                 user_id UUID NOT NULL,
+                                 last_read_seq BIGINT NOT NULL DEFAULT 0,
+                                 creation_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                                 last_modified_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                                 FOREIGN KEY (family_id) REFERENCES families(id) ON DELETE CASCADE,
+                                 FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+                                 UNIQUE(family_id, user_id)
+);
+
+CREATE INDEX idx_chat_read_state_user ON chat_read_state(user_id);
+
+CREATE OR REPLACE FUNCTION update_last_modified_date_chat_read_state()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.last_modified_date = CURRENT_TIMESTAMP;
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER set_last_modified_date_chat_read_state
+    BEFORE UPDATE ON chat_read_state
+    FOR EACH ROW
+    EXECUTE FUNCTION update_last_modified_date_chat_read_state();
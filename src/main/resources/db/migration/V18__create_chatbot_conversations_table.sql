@@ -0,0 +1,23 @@
+CREATE TABLE chatbot_conversations (
+                                       id UUID PRIMARY KEY,
+                                       owner_id UUID NOT NULL,
+                                       summary TEXT,
+                                       turns TEXT NOT NULL DEFAULT '[]',
+                                       creation_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                                       last_modified_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_chatbot_conversations_owner ON chatbot_conversations(owner_id);
+
+CREATE OR REPLACE FUNCTION update_last_modified_date_chatbot_conversations()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.last_modified_date = CURRENT_TIMESTAMP;
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER set_last_modified_date_chatbot_conversations
+    BEFORE UPDATE ON chatbot_conversations
+    FOR EACH ROW
+    EXECUTE FUNCTION update_last_modified_date_chatbot_conversations();
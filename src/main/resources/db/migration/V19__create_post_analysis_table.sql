@@ -0,0 +1,25 @@
+CREATE TABLE post_analysis (
+                               id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+                               post_id UUID NOT NULL,
+                               kind VARCHAR(20) NOT NULL,
+                               fingerprint VARCHAR(64) NOT NULL,
+                               api_version VARCHAR(100) NOT NULL,
+                               results TEXT NOT NULL DEFAULT '[]',
+                               creation_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                               last_modified_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                               FOREIGN KEY (post_id) REFERENCES posts(id) ON DELETE CASCADE,
+                               UNIQUE(post_id, kind)
+);
+
+CREATE OR REPLACE FUNCTION update_last_modified_date_post_analysis()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.last_modified_date = CURRENT_TIMESTAMP;
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER set_last_modified_date_post_analysis
+    BEFORE UPDATE ON post_analysis
+    FOR EACH ROW
+    EXECUTE FUNCTION update_last_modified_date_post_analysis();
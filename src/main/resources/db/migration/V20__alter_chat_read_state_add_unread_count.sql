@@ -0,0 +1,65 @@
+-- Contador de no leídos por usuario y familia, mantenido al insertar y eliminar mensajes,
+-- así consultar los no leídos es leer una fila y no contar mensajes
+ALTER TABLE chat_read_state
+    ADD COLUMN unread_count BIGINT NOT NULL DEFAULT 0;
+
+-- Todos los miembros actuales tienen fila
+INSERT INTO chat_read_state (family_id, user_id, last_read_seq)
+SELECT u.family_id, u.id, 0
+FROM users u
+WHERE u.family_id IS NOT NULL
+ON CONFLICT (family_id, user_id) DO NOTHING;
+
+-- Mensajes de los demás miembros posteriores a la marca de cada usuario
+UPDATE chat_read_state r
+SET unread_count = (
+    SELECT COUNT(*)
+    FROM messages m
+    WHERE m.family_id = r.family_id
+      AND m.seq > r.last_read_seq
+      AND m.user_id <> r.user_id
+);
+
+-- El seq ya está asignado (BEFORE INSERT) y el contador de la familia sigue bloqueado hasta
+-- el commit; marcar como leído toma ese mismo bloqueo, así ningún incremento se pierde.
+-- Los miembros sin fila (recién unidos) la reciben con el primer mensaje que no leyeron.
+CREATE OR REPLACE FUNCTION count_unread_on_message_insert()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE chat_read_state
+    SET unread_count = unread_count + 1
+    WHERE family_id = NEW.family_id
+      AND user_id <> NEW.user_id
+      AND last_read_seq < NEW.seq;
+
+    INSERT INTO chat_read_state (family_id, user_id, last_read_seq, unread_count)
+    SELECT NEW.family_id, u.id, 0, 1
+    FROM users u
+    WHERE u.family_id = NEW.family_id
+      AND u.id <> NEW.user_id
+    ON CONFLICT (family_id, user_id) DO NOTHING;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER count_unread_after_message_insert
+    AFTER INSERT ON messages
+    FOR EACH ROW
+    EXECUTE FUNCTION count_unread_on_message_insert();
+
+CREATE OR REPLACE FUNCTION count_unread_on_message_delete()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE chat_read_state
+    SET unread_count = GREATEST(unread_count - 1, 0)
+    WHERE family_id = OLD.family_id
+      AND user_id <> OLD.user_id
+      AND last_read_seq < OLD.seq;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER count_unread_after_message_delete
+    AFTER DELETE ON messages
+    FOR EACH ROW
+    EXECUTE FUNCTION count_unread_on_message_delete();
@@ -0,0 +1,197 @@
+package com.harmoniChat.app_hc.configuration;
+
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor.Limits;
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor.Provider;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundApiGovernorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private HttpServer server;
+    private final AtomicInteger serverCalls = new AtomicInteger();
+    private volatile int serverStatus = 200;
+    private OutboundApiGovernor governor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+
+        // Servidor local que hace de proveedor
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/analyze", exchange -> {
+            serverCalls.incrementAndGet();
+            byte[] body = "{\"tags\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(serverStatus, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        if (governor != null) {
+            governor.shutdown();
+        }
+    }
+
+    private OutboundApiGovernor governor(Limits limits, int failureThreshold, Duration openDuration) {
+        governor = new OutboundApiGovernor(meterRegistry, Map.of(Provider.AZURE_VISION, limits),
+                100, Duration.ofSeconds(5), failureThreshold, openDuration);
+        return governor;
+    }
+
+    private String callServer() {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/analyze";
+        return new RestTemplate().postForObject(url, Map.of("url", "foto.jpg"), String.class);
+    }
+
+    @Test
+    void testExecute_OpensCircuitAfterConsecutiveFailures() {
+        OutboundApiGovernor governor = governor(new Limits(0, 0, 10), 3, Duration.ofMinutes(1));
+        serverStatus = 503;
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(HttpServerErrorException.class,
+                    () -> governor.execute(Provider.AZURE_VISION, "familia", this::callServer));
+        }
+        OutboundApiGovernor.RejectedException rejected = assertThrows(OutboundApiGovernor.RejectedException.class,
+                () -> governor.execute(Provider.AZURE_VISION, "familia", this::callServer));
+
+        assertEquals("circuit_open", rejected.getReason());
+        assertEquals(3, serverCalls.get());
+        assertEquals(2.0, meterRegistry.get("outbound.circuit.state").tag("provider", "azure_vision").gauge().value());
+    }
+
+    @Test
+    void testExecute_HalfOpenProbeClosesCircuit() throws Exception {
+        OutboundApiGovernor governor = governor(new Limits(0, 0, 10), 1, Duration.ofMillis(100));
+        serverStatus = 500;
+        assertThrows(HttpServerErrorException.class,
+                () -> governor.execute(Provider.AZURE_VISION, "familia", this::callServer));
+
+        Thread.sleep(150);
+        serverStatus = 200;
+
+        assertNotNull(governor.execute(Provider.AZURE_VISION, "familia", this::callServer));
+        assertNotNull(governor.execute(Provider.AZURE_VISION, "familia", this::callServer));
+        assertEquals(0.0, meterRegistry.get("outbound.circuit.state").tag("provider", "azure_vision").gauge().value());
+    }
+
+    @Test
+    void testExecute_ClientErrorsDoNotOpenCircuit() {
+        OutboundApiGovernor governor = governor(new Limits(0, 0, 10), 1, Duration.ofMinutes(1));
+        serverStatus = 400;
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(Exception.class, () -> governor.execute(Provider.AZURE_VISION, "familia", this::callServer));
+        }
+        assertEquals(3, serverCalls.get());
+    }
+
+    @Test
+    void testExecute_LimitsCallsInFlight() throws Exception {
+        OutboundApiGovernor governor = governor(new Limits(0, 0, 2), 5, Duration.ofMinutes(1));
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(6);
+
+        for (int i = 0; i < 6; i++) {
+            Thread.ofVirtual().start(() -> {
+                governor.execute(Provider.AZURE_VISION, "familia", () -> {
+                    maxSeen.accumulateAndGet(current.incrementAndGet(), Math::max);
+                    sleep(30);
+                    current.decrementAndGet();
+                    return callServer();
+                });
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxSeen.get());
+        assertEquals(6, serverCalls.get());
+    }
+
+    @Test
+    void testCall_RateLimitsWithTokenBucket() {
+        OutboundApiGovernor governor = governor(new Limits(20, 1, 10), 5, Duration.ofMinutes(1));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            governor.call(Provider.AZURE_VISION, () -> Mono.just("ok")).block();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Ráfaga de 1 y 20/s: las 4 siguientes esperan ~50 ms cada una
+        assertTrue(elapsedMillis >= 150, "tardó " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void testCall_ServesFamiliesInTurns() throws Exception {
+        OutboundApiGovernor governor = governor(new Limits(0, 0, 1), 5, Duration.ofMinutes(1));
+        CompletableFuture<Void> blocker = new CompletableFuture<>();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        // Ocupa el único cupo mientras se encolan las demás
+        governor.call(Provider.AZURE_VISION, () -> Mono.fromFuture(blocker)).subscribe();
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for (String family : List.of("A", "A", "A", "B", "C")) {
+            calls.add(governor.call(Provider.AZURE_VISION, () -> Mono.fromCallable(() -> {
+                        order.add(family);
+                        return family;
+                    }))
+                    .contextWrite(OutboundApiGovernor.forFamily(family))
+                    .toFuture());
+        }
+
+        blocker.complete(null);
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("A", "B", "C", "A", "A"), order);
+    }
+
+    @Test
+    void testExecute_RejectsWhenQueueIsFull() {
+        governor = new OutboundApiGovernor(meterRegistry, Map.of(Provider.AZURE_VISION, new Limits(0, 0, 1)),
+                0, Duration.ofSeconds(5), 5, Duration.ofMinutes(1));
+        CompletableFuture<Void> blocker = new CompletableFuture<>();
+        governor.call(Provider.AZURE_VISION, () -> Mono.fromFuture(blocker)).subscribe();
+
+        OutboundApiGovernor.RejectedException rejected = assertThrows(OutboundApiGovernor.RejectedException.class,
+                () -> governor.execute(Provider.AZURE_VISION, "familia", () -> "ok"));
+        assertEquals("queue_full", rejected.getReason());
+        blocker.complete(null);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.harmoniChat.app_hc.configuration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketLaneExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private WebSocketLaneExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new WebSocketLaneExecutor(meterRegistry, false, 1, 1, 2, 1, 1, 1, 1);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    private Message<byte[]> message(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private String threadFor(String destination) throws Exception {
+        CompletableFuture<String> thread = new CompletableFuture<>();
+        executor.execute(new Task(message(destination), () -> thread.complete(Thread.currentThread().getName())));
+        return thread.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testRoutesByDestination() throws Exception {
+        assertTrue(threadFor("/app/chatbot.send").startsWith("ws-chatbot-"));
+        assertTrue(threadFor("/app/chat.send").startsWith("ws-chat-"));
+        assertTrue(threadFor("/app/likes.like").startsWith("ws-likes-"));
+        assertTrue(threadFor("/app/comments/123").startsWith("ws-comments-"));
+        assertTrue(threadFor("/topic/family.1").startsWith("ws-default-"));
+    }
+
+    @Test
+    void testSaturatedLaneDoesNotBlockOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        // Un hilo ocupado y la cola (capacidad 1) llena: el carril del chatbot rechaza
+        executor.execute(new Task(message("/app/chatbot.send"), blocked));
+        executor.execute(new Task(message("/app/chatbot.send"), blocked));
+        assertThrows(RejectedExecutionException.class,
+                () -> executor.execute(new Task(message("/app/chatbot.send"), blocked)));
+
+        // El chat sigue atendiéndose
+        assertTrue(threadFor("/app/chat.send").startsWith("ws-chat-"));
+        assertEquals(1, meterRegistry.get("executor.queued").tag("name", "websocket.chatbot").gauge().value());
+
+        release.countDown();
+    }
+
+    private record Task(Message<?> message, Runnable action) implements MessageHandlingRunnable {
+
+        @Override
+        public Message<?> getMessage() {
+            return message;
+        }
+
+        @Override
+        public MessageHandler getMessageHandler() {
+            return m -> action.run();
+        }
+
+        @Override
+        public void run() {
+            action.run();
+        }
+    }
+}
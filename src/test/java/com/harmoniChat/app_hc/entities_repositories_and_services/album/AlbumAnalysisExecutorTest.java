@@ -0,0 +1,132 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlbumAnalysisExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AlbumAnalysisExecutor analysisExecutor;
+
+    @AfterEach
+    void tearDown() {
+        analysisExecutor.shutdown();
+    }
+
+    private AlbumAnalysisExecutor executor(boolean virtualThreads, int perFamily, Duration batchTimeout) {
+        analysisExecutor = new AlbumAnalysisExecutor(meterRegistry, virtualThreads, 4, 10, perFamily, batchTimeout);
+        return analysisExecutor;
+    }
+
+    private static List<Runnable> tasks(int count, Runnable task) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void testRunAll_RunsEveryTaskOnPlatformPool() {
+        AlbumAnalysisExecutor executor = executor(false, 4, Duration.ofSeconds(5));
+        AtomicInteger done = new AtomicInteger();
+
+        executor.runAll(UUID.randomUUID(), tasks(20, done::incrementAndGet));
+
+        assertEquals(20, done.get());
+    }
+
+    @Test
+    void testRunAll_LimitsConcurrencyPerFamily() {
+        AlbumAnalysisExecutor executor = executor(true, 2, Duration.ofSeconds(5));
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+
+        executor.runAll(UUID.randomUUID(), tasks(10, () -> {
+            maxSeen.accumulateAndGet(current.incrementAndGet(), Math::max);
+            sleep(20);
+            current.decrementAndGet();
+        }));
+
+        assertEquals(2, maxSeen.get());
+    }
+
+    @Test
+    void testRunAll_StopsAtDeadlineAndInterruptsRunningTasks() {
+        AlbumAnalysisExecutor executor = executor(true, 1, Duration.ofMillis(100));
+        AtomicInteger started = new AtomicInteger();
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        long start = System.nanoTime();
+        executor.runAll(UUID.randomUUID(), tasks(5, () -> {
+            started.incrementAndGet();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        }));
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+        sleep(100);
+        assertEquals(1, started.get());
+        assertTrue(interrupted.get());
+        assertEquals(1.0, meterRegistry.get("album.analysis.batches.aborted").tag("reason", "timeout").counter().count());
+    }
+
+    @Test
+    void testRunAll_ReleasesFamilyPermitsAfterCancellation() {
+        AlbumAnalysisExecutor executor = executor(true, 1, Duration.ofMillis(50));
+        UUID familyId = UUID.randomUUID();
+        executor.runAll(familyId, tasks(3, () -> sleep(10_000)));
+
+        // El cupo de la familia quedó libre: el siguiente lote corre completo
+        AtomicInteger done = new AtomicInteger();
+        executor.runAll(familyId, tasks(3, done::incrementAndGet));
+
+        assertEquals(3, done.get());
+    }
+
+    @Test
+    void testRunAll_CancelsWhenCallerIsInterrupted() throws Exception {
+        AlbumAnalysisExecutor executor = executor(true, 2, Duration.ofSeconds(30));
+        CountDownLatch running = new CountDownLatch(2);
+        CountDownLatch stopped = new CountDownLatch(2);
+
+        Thread caller = Thread.ofVirtual().start(() -> executor.runAll(UUID.randomUUID(), tasks(10, () -> {
+            running.countDown();
+            try {
+                Thread.sleep(30_000);
+            } catch (InterruptedException e) {
+                stopped.countDown();
+            }
+        })));
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        caller.join(5_000);
+        assertFalse(caller.isAlive());
+    }
+}
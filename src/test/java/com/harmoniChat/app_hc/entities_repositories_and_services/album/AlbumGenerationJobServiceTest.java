@@ -0,0 +1,168 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AlbumGenerationJobServiceTest {
+
+    @Mock
+    private AlbumService albumService;
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    private AlbumGenerationJobService jobService;
+    private final UUID familyId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        jobService = new AlbumGenerationJobService(albumService, messagingTemplate, new SimpleMeterRegistry(),
+                1, 1, Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        jobService.shutdown();
+    }
+
+    private AlbumGenerationJob awaitFinished(AlbumGenerationJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!job.getStatus().isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return job;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSubmit_RunsJobAndPublishesProgress() throws Exception {
+        when(albumService.generateAutomaticAlbums(eq(familyId), any())).thenAnswer(invocation -> {
+            Consumer<AlbumGenerationJob.Status> progress = invocation.getArgument(1);
+            progress.accept(AlbumGenerationJob.Status.LOADING_POSTS);
+            progress.accept(AlbumGenerationJob.Status.ANALYZING);
+            progress.accept(AlbumGenerationJob.Status.SAVING);
+            return 2;
+        });
+
+        AlbumGenerationJob job = awaitFinished(jobService.submit(familyId));
+
+        assertEquals(AlbumGenerationJob.Status.COMPLETED, job.getStatus());
+        assertEquals(2, job.getAlbumsSuggested());
+        assertSame(job, jobService.findJob(job.getId()).orElseThrow());
+
+        // Cada etapa se publica una vez, en orden y como copia que ya no cambia
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate, timeout(1000).times(5))
+                .convertAndSend(eq("/topic/family." + familyId + ".albums"), payloads.capture());
+        assertEquals(List.of(AlbumGenerationJob.Status.QUEUED, AlbumGenerationJob.Status.LOADING_POSTS,
+                        AlbumGenerationJob.Status.ANALYZING, AlbumGenerationJob.Status.SAVING,
+                        AlbumGenerationJob.Status.COMPLETED),
+                payloads.getAllValues().stream()
+                        .map(payload -> ((AlbumGenerationJob.Snapshot) payload).status())
+                        .toList());
+    }
+
+    @Test
+    void testSubmit_ReturnsActiveJobForSameFamily() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(albumService.generateAutomaticAlbums(eq(familyId), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return 0;
+        });
+
+        AlbumGenerationJob first = jobService.submit(familyId);
+        AlbumGenerationJob second = jobService.submit(familyId);
+        release.countDown();
+
+        assertSame(first, second);
+        awaitFinished(first);
+        verify(albumService, times(1)).generateAutomaticAlbums(eq(familyId), any());
+
+        // Terminado el trabajo, la familia puede generar de nuevo
+        assertNotEquals(first.getId(), awaitFinished(jobService.submit(familyId)).getId());
+    }
+
+    @Test
+    void testFindJob_RunningJobOutlivesRetention() throws Exception {
+        AlbumGenerationJobService shortRetention = new AlbumGenerationJobService(albumService, messagingTemplate,
+                new SimpleMeterRegistry(), 1, 1, Duration.ofMillis(20));
+        CountDownLatch release = new CountDownLatch(1);
+        when(albumService.generateAutomaticAlbums(eq(familyId), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return 0;
+        });
+
+        try {
+            AlbumGenerationJob job = shortRetention.submit(familyId);
+            Thread.sleep(100);
+
+            // Sigue en curso: se encuentra aunque la retención ya venció
+            assertSame(job, shortRetention.findJob(job.getId()).orElseThrow());
+            release.countDown();
+            assertEquals(AlbumGenerationJob.Status.COMPLETED, awaitFinished(job).getStatus());
+        } finally {
+            release.countDown();
+            shortRetention.shutdown();
+        }
+    }
+
+    @Test
+    void testSubmit_RejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(albumService.generateAutomaticAlbums(any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return 0;
+        });
+
+        AlbumGenerationJob running = jobService.submit(UUID.randomUUID());
+        // Espera a que el primero ocupe el único hilo para que el segundo quede en cola
+        verify(albumService, timeout(1000)).generateAutomaticAlbums(eq(running.getFamilyId()), any());
+        AlbumGenerationJob queued = jobService.submit(UUID.randomUUID());
+
+        UUID rejectedFamily = UUID.randomUUID();
+        assertThrows(RejectedExecutionException.class, () -> jobService.submit(rejectedFamily));
+        release.countDown();
+
+        // El rechazo no deja a la familia bloqueada
+        awaitFinished(running);
+        awaitFinished(queued);
+        assertDoesNotThrow(() -> jobService.submit(rejectedFamily));
+    }
+
+    @Test
+    void testSubmit_MarksFailedJobs() throws Exception {
+        when(albumService.generateAutomaticAlbums(eq(familyId), any())).thenThrow(new IllegalStateException("Gemini"));
+
+        AlbumGenerationJob job = awaitFinished(jobService.submit(familyId));
+
+        assertEquals(AlbumGenerationJob.Status.FAILED, job.getStatus());
+        assertNotNull(job.getError());
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate, timeout(1000).times(2)).convertAndSend(any(String.class), payloads.capture());
+        assertTrue(payloads.getAllValues().stream()
+                .allMatch(payload -> ((AlbumGenerationJob.Snapshot) payload).id().equals(job.getId())));
+        assertEquals(AlbumGenerationJob.Status.FAILED,
+                ((AlbumGenerationJob.Snapshot) payloads.getValue()).status());
+    }
+}
@@ -0,0 +1,131 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.configuration.ComputerVisionConfig;
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageAnalysisServiceTest {
+
+    @Mock
+    private ComputerVisionConfig visionConfig;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private PostAnalysisService postAnalysisService;
+
+    @Mock
+    private OutboundApiGovernor outboundGovernor;
+
+    private AlbumAnalysisExecutor analysisExecutor;
+    private ImageAnalysisService imageAnalysisService;
+    private final UUID familyId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        analysisExecutor = new AlbumAnalysisExecutor(new SimpleMeterRegistry(), true, 4, 10, 4, Duration.ofSeconds(5));
+        imageAnalysisService = new ImageAnalysisService(visionConfig, restTemplate, outboundGovernor,
+                postAnalysisService, analysisExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        analysisExecutor.shutdown();
+    }
+
+    // El gobernador deja pasar la llamada tal cual
+    private void allowOutboundCalls() {
+        when(outboundGovernor.execute(eq(OutboundApiGovernor.Provider.AZURE_VISION), eq(familyId), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(2).get());
+    }
+
+    private Map<String, List<Post>> analyze(List<Post> posts) {
+        TagIndex tagIndex = new TagIndex();
+        imageAnalysisService.analyzeImages(posts, 20, tagIndex);
+        return tagIndex.groupsWithAtLeast(1);
+    }
+
+    private Post post(String filesUrl) {
+        return Post.builder().id(UUID.randomUUID()).familyId(familyId).filesURL(filesUrl).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockVision(ResponseEntity<Map> response) {
+        allowOutboundCalls();
+        when(visionConfig.getEndpoint()).thenReturn("https://vision.test");
+        when(visionConfig.getApiKey()).thenReturn("clave");
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+                .thenReturn(response);
+    }
+
+    @Test
+    void testAnalyzeImages_UsesStoredTagsWithoutCallingAzure() {
+        Post post = post("https://blob/playa.jpg");
+        when(postAnalysisService.findCurrent(eq(PostAnalysis.Kind.IMAGE), anyMap(), anyString()))
+                .thenReturn(Map.of(post.getId(), List.of("playa", "mar")));
+
+        Map<String, List<Post>> groups = analyze(List.of(post));
+
+        assertEquals(List.of(post), groups.get("playa"));
+        assertEquals(List.of(post), groups.get("mar"));
+        verifyNoInteractions(restTemplate);
+        verify(postAnalysisService, never()).store(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testAnalyzeImages_AnalyzesAndStoresMissingPosts() {
+        Post post = post("https://blob/perro.png");
+        when(postAnalysisService.findCurrent(eq(PostAnalysis.Kind.IMAGE), anyMap(), anyString())).thenReturn(Map.of());
+        mockVision(ResponseEntity.ok(Map.of("tags", List.of(
+                Map.of("name", "Perro", "confidence", 0.95),
+                Map.of("name", "cesped", "confidence", 0.5),
+                Map.of("name", "outdoor", "confidence", 0.99)))));
+
+        Map<String, List<Post>> groups = analyze(List.of(post, post("documento.pdf")));
+
+        assertEquals(Map.of("perro", List.of(post)), groups);
+        verify(postAnalysisService).store(PostAnalysis.Kind.IMAGE, post.getId(),
+                PostAnalysisService.fingerprint("https://blob/perro.png"), ImageAnalysisService.ANALYSIS_VERSION,
+                List.of("perro"));
+    }
+
+    @Test
+    void testAnalyzeImages_DoesNotStoreFailedAnalysis() {
+        Post post = post("https://blob/perro.png");
+        when(postAnalysisService.findCurrent(eq(PostAnalysis.Kind.IMAGE), anyMap(), anyString())).thenReturn(Map.of());
+        allowOutboundCalls();
+        when(visionConfig.getEndpoint()).thenReturn("https://vision.test");
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+                .thenThrow(new ResourceAccessException("sin conexión"));
+
+        assertTrue(analyze(List.of(post)).isEmpty());
+        verify(postAnalysisService, never()).store(any(), any(), any(), any(), any());
+    }
+}
@@ -0,0 +1,101 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalAlbumClustererTest {
+
+    private static final UUID FAMILY_ID = UUID.randomUUID();
+
+    private final LocalAlbumClusterer clusterer = new LocalAlbumClusterer(0.3, Duration.ofDays(3));
+    private final Map<String, List<Post>> tagGroups = new LinkedHashMap<>();
+
+    private Post post(LocalDateTime date, String location, String... tags) {
+        Post post = Post.builder().id(UUID.randomUUID()).creationDate(date).location(location).build();
+        for (String tag : tags) {
+            tagGroups.computeIfAbsent(tag, k -> new ArrayList<>()).add(post);
+        }
+        return post;
+    }
+
+    @Test
+    void testGroup_JoinsSameLocationUnderLocationTitle() {
+        LocalDateTime march = LocalDateTime.of(2024, 3, 10, 12, 0);
+        Post first = post(march, "Cali, Valle del Cauca", "cali", "parque");
+        Post second = post(march.plusDays(1), "Cali", "cali", "perro");
+        // Otro viaje a Cali meses después: mismo álbum por el nombre
+        Post third = post(march.plusMonths(4), "Cali, Colombia", "cali", "comida");
+        // Comparte etiqueta con el primero pero es de otra ciudad
+        post(march.plusDays(1), "Bogotá", "parque");
+
+        Map<String, List<Post>> albums = clusterer.group(FAMILY_ID, tagGroups, 3);
+
+        assertEquals(Map.of("Cali", List.of(first, second, third)), albums);
+    }
+
+    @Test
+    void testGroup_ClustersSimilarTagsWithinTimeWindow() {
+        LocalDateTime june = LocalDateTime.of(2024, 6, 1, 10, 0);
+        Post a = post(june, null, "playa", "mar", "arena");
+        Post b = post(june.plusHours(5), null, "playa", "mar");
+        Post c = post(june.plusDays(2), null, "mar", "arena", "sol");
+        // Mismas etiquetas pero fuera de la ventana
+        post(june.plusDays(20), null, "playa", "mar");
+        // Dentro de la ventana pero sin etiquetas parecidas
+        post(june.plusDays(1), null, "computador");
+
+        Map<String, List<Post>> albums = clusterer.group(FAMILY_ID, tagGroups, 3);
+
+        assertEquals(Map.of("Mar", List.of(a, b, c)), albums);
+    }
+
+    @Test
+    void testGroup_KeepsHolidaySeasonTogether() {
+        Post eve = post(LocalDateTime.of(2024, 12, 24, 20, 0), null, "arbol");
+        Post day = post(LocalDateTime.of(2024, 12, 25, 10, 0), null, "regalos");
+        Post early = post(LocalDateTime.of(2024, 12, 20, 18, 0), null, "novena");
+        post(LocalDateTime.of(2023, 12, 24, 20, 0), null, "arbol");
+        Post newYearsEve = post(LocalDateTime.of(2024, 12, 31, 23, 0), null, "fuegos");
+        Post newYearsDay = post(LocalDateTime.of(2025, 1, 1, 0, 30), null, "abrazos");
+        Post nextDay = post(LocalDateTime.of(2025, 1, 2, 12, 0), null, "almuerzo");
+
+        Map<String, List<Post>> albums = clusterer.group(FAMILY_ID, tagGroups, 3);
+
+        // El año del título es el más repetido entre sus posts, como en AlbumService
+        assertEquals(Set.of("Navidad 2024", "Año Nuevo 2025"), albums.keySet());
+        assertEquals(Set.of(early, eve, day), Set.copyOf(albums.get("Navidad 2024")));
+        assertEquals(Set.of(newYearsEve, newYearsDay, nextDay), Set.copyOf(albums.get("Año Nuevo 2025")));
+    }
+
+    @Test
+    void testGroup_IsDeterministic() {
+        LocalDateTime date = LocalDateTime.of(2024, 8, 15, 9, 0);
+        for (int i = 0; i < 30; i++) {
+            post(date.plusHours(i * 7), i % 3 == 0 ? "Medellín" : null, "tag-" + (i % 4), "tag-" + (i % 5));
+        }
+
+        Map<String, List<Post>> first = clusterer.group(FAMILY_ID, tagGroups, 3);
+        Map<String, List<Post>> second = clusterer.group(FAMILY_ID, tagGroups, 3);
+
+        assertFalse(first.isEmpty());
+        assertEquals(first, second);
+        assertEquals(List.copyOf(first.keySet()), List.copyOf(second.keySet()));
+    }
+
+    @Test
+    void testJaccard() {
+        assertEquals(0.5, LocalAlbumClusterer.jaccard(Set.of("a", "b"), Set.of("b", "c", "a", "d")));
+        assertEquals(0.0, LocalAlbumClusterer.jaccard(Set.of(), Set.of()));
+    }
+}
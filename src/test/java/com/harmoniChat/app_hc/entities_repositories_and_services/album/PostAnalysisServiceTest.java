@@ -0,0 +1,110 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PostAnalysisServiceTest {
+
+    private static final String VERSION = "vision/v3.2;tags;es;1";
+
+    @Mock
+    private PostAnalysisRepository postAnalysisRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PostAnalysisService postAnalysisService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        postAnalysisService = new PostAnalysisService(postAnalysisRepository, new ObjectMapper(), meterRegistry);
+    }
+
+    private PostAnalysis analysis(UUID postId, String fingerprint, String apiVersion, String results) {
+        return PostAnalysis.builder()
+                .postId(postId)
+                .kind(PostAnalysis.Kind.IMAGE)
+                .fingerprint(fingerprint)
+                .apiVersion(apiVersion)
+                .results(results)
+                .build();
+    }
+
+    @Test
+    void testFindCurrent_OnlyReturnsMatchingFingerprintAndVersion() {
+        UUID current = UUID.randomUUID();
+        UUID changedImage = UUID.randomUUID();
+        UUID oldVersion = UUID.randomUUID();
+        UUID neverAnalyzed = UUID.randomUUID();
+        Map<UUID, String> fingerprints = Map.of(
+                current, PostAnalysisService.fingerprint("playa.jpg"),
+                changedImage, PostAnalysisService.fingerprint("nueva.jpg"),
+                oldVersion, PostAnalysisService.fingerprint("perro.jpg"),
+                neverAnalyzed, PostAnalysisService.fingerprint("gato.jpg"));
+        when(postAnalysisRepository.findByKindAndPostIdIn(eq(PostAnalysis.Kind.IMAGE), any())).thenReturn(List.of(
+                analysis(current, PostAnalysisService.fingerprint("playa.jpg"), VERSION, "[\"playa\",\"mar\"]"),
+                analysis(changedImage, PostAnalysisService.fingerprint("vieja.jpg"), VERSION, "[\"montaña\"]"),
+                analysis(oldVersion, PostAnalysisService.fingerprint("perro.jpg"), "vision/v3.1;tags;es;1", "[\"perro\"]")));
+
+        Map<UUID, List<String>> result = postAnalysisService.findCurrent(PostAnalysis.Kind.IMAGE, fingerprints, VERSION);
+
+        assertEquals(Map.of(current, List.of("playa", "mar")), result);
+        assertEquals(1.0, meterRegistry.get("album.analysis.cache").tag("kind", "image").tag("result", "hit").counter().count());
+        assertEquals(3.0, meterRegistry.get("album.analysis.cache").tag("kind", "image").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testFindCurrent_IgnoresUnreadableResults() {
+        UUID postId = UUID.randomUUID();
+        String fingerprint = PostAnalysisService.fingerprint("playa.jpg");
+        when(postAnalysisRepository.findByKindAndPostIdIn(eq(PostAnalysis.Kind.IMAGE), any()))
+                .thenReturn(List.of(analysis(postId, fingerprint, VERSION, "no es json")));
+
+        assertTrue(postAnalysisService.findCurrent(PostAnalysis.Kind.IMAGE, Map.of(postId, fingerprint), VERSION).isEmpty());
+    }
+
+    @Test
+    void testFindCurrent_SkipsQueryWithoutPosts() {
+        assertTrue(postAnalysisService.findCurrent(PostAnalysis.Kind.TEXT, Map.of(), VERSION).isEmpty());
+        verifyNoInteractions(postAnalysisRepository);
+    }
+
+    @Test
+    void testStore_UpsertsResultsAsJson() {
+        UUID postId = UUID.randomUUID();
+
+        postAnalysisService.store(PostAnalysis.Kind.TEXT, postId, "huella", VERSION, List.of("cumpleaños", "abuela"));
+
+        verify(postAnalysisRepository).upsert(postId, "TEXT", "huella", VERSION, "[\"cumpleaños\",\"abuela\"]");
+    }
+
+    @Test
+    void testStore_DoesNotPropagateErrors() {
+        doThrow(new RuntimeException("sin conexión")).when(postAnalysisRepository)
+                .upsert(any(), anyString(), anyString(), anyString(), anyString());
+
+        assertDoesNotThrow(() -> postAnalysisService.store(PostAnalysis.Kind.IMAGE, UUID.randomUUID(), "huella", VERSION, List.of()));
+    }
+
+    @Test
+    void testFingerprint_IsStableAndContentSensitive() {
+        assertEquals(PostAnalysisService.fingerprint("playa.jpg"), PostAnalysisService.fingerprint("playa.jpg"));
+        assertNotEquals(PostAnalysisService.fingerprint("playa.jpg"), PostAnalysisService.fingerprint("playa2.jpg"));
+        assertEquals(64, PostAnalysisService.fingerprint(null).length());
+    }
+}
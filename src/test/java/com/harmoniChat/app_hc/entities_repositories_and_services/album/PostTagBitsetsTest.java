@@ -0,0 +1,103 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostTagBitsetsTest {
+
+    private static Post post() {
+        return Post.builder().id(UUID.randomUUID()).build();
+    }
+
+    @Test
+    void testMatching_UsesRatioOfAlbumTags() {
+        Post beach = post();
+        Post beachAndCali = post();
+        Post dog = post();
+        Map<String, List<Post>> groups = new LinkedHashMap<>();
+        groups.put("playa", List.of(beach, beachAndCali));
+        groups.put("cali", List.of(beachAndCali));
+        groups.put("perro", List.of(dog));
+        PostTagBitsets bitsets = new PostTagBitsets(groups);
+
+        // 1 de 3 etiquetas no llega al 40 %, 2 de 3 sí
+        assertEquals(List.of(beachAndCali), bitsets.matching(List.of("playa", "cali", "mar"), 0.4));
+        assertEquals(List.of(beach, beachAndCali), bitsets.matching(List.of("playa", "mar"), 0.4));
+        assertEquals(List.of(), bitsets.matching(List.of("montaña"), 0.4));
+        assertEquals(List.of(), bitsets.matching(List.of(), 0.4));
+    }
+
+    @Test
+    void testMatching_CountsRepeatedAlbumTagsEachTime() {
+        Post beach = post();
+        Post cali = post();
+        Map<String, List<Post>> groups = new LinkedHashMap<>();
+        groups.put("playa", List.of(beach));
+        groups.put("cali", List.of(cali));
+        groups.put("mar", List.of());
+        PostTagBitsets bitsets = new PostTagBitsets(groups);
+
+        // "playa" dos veces: 2 de 5 llega al 40 %, "cali" con 1 de 5 no
+        List<String> albumTags = List.of("playa", "playa", "cali", "mar", "sol");
+        assertEquals(List.of(beach), bitsets.matching(albumTags, 0.4));
+    }
+
+    @Test
+    void testMatching_SameResultAsScanningTagSetsOnLargeFamily() {
+        Random random = new Random(42);
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            tags.add("tag-" + i);
+        }
+
+        // 10 000 posts con entre 1 y 10 etiquetas cada uno
+        Map<String, List<Post>> groups = new LinkedHashMap<>();
+        Map<Post, Set<String>> tagsByPost = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            Post post = post();
+            Set<String> postTags = new HashSet<>();
+            for (int t = 1 + random.nextInt(10); t > 0; t--) {
+                postTags.add(tags.get(random.nextInt(tags.size())));
+            }
+            postTags.forEach(tag -> groups.computeIfAbsent(tag, k -> new ArrayList<>()).add(post));
+            tagsByPost.put(post, postTags);
+        }
+        PostTagBitsets bitsets = new PostTagBitsets(groups);
+
+        for (int album = 0; album < 100; album++) {
+            List<String> albumTags = new ArrayList<>();
+            for (int t = 1 + random.nextInt(6); t > 0; t--) {
+                albumTags.add(random.nextInt(10) == 0 ? "desconocida-" + t : tags.get(random.nextInt(tags.size())));
+            }
+            // Con repeticiones, como a veces las devuelve Gemini
+            if (random.nextInt(4) == 0) {
+                albumTags.add(albumTags.get(0));
+            }
+
+            List<String> finalTags = albumTags;
+            Set<Post> expected = new HashSet<>();
+            tagsByPost.forEach((post, postTags) -> {
+                long matchCount = finalTags.stream().filter(postTags::contains).count();
+                if ((double) matchCount / finalTags.size() >= 0.4) {
+                    expected.add(post);
+                }
+            });
+
+            List<Post> matching = bitsets.matching(albumTags, 0.4);
+            assertEquals(expected.size(), matching.size());
+            assertEquals(expected, new HashSet<>(matching));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagIndexTest {
+
+    private static Post post() {
+        return Post.builder().id(UUID.randomUUID()).build();
+    }
+
+    @Test
+    void testGroupsWithAtLeast_FiltersAndKeepsRegistrationOrder() {
+        Post first = post();
+        Post second = post();
+        Post third = post();
+        TagIndex tagIndex = new TagIndex(List.of(first, second, third));
+
+        tagIndex.add("playa", third);
+        tagIndex.add("playa", first);
+        tagIndex.add("playa", second);
+        tagIndex.add("cali", second);
+
+        Map<String, List<Post>> groups = tagIndex.groupsWithAtLeast(2);
+
+        assertEquals(Map.of("playa", List.of(first, second, third)), groups);
+    }
+
+    @Test
+    void testAdd_CountsRepeatedPostOnce() {
+        Post post = post();
+        TagIndex tagIndex = new TagIndex();
+
+        // La misma etiqueta desde la imagen y desde el texto
+        tagIndex.add("cali", post);
+        tagIndex.add("cali", post);
+
+        assertEquals(1, tagIndex.postIds("cali").size());
+        assertEquals(Map.of("cali", List.of(post)), tagIndex.groupsWithAtLeast(1));
+    }
+
+    @Test
+    void testAdd_ConcurrentWritersLoseNoUpdates() throws Exception {
+        int threads = 16;
+        int postsPerThread = 2_000;
+        int tags = 20;
+        TagIndex tagIndex = new TagIndex();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<List<Post>> postsByThread = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<Post> posts = new ArrayList<>();
+            for (int i = 0; i < postsPerThread; i++) {
+                posts.add(post());
+            }
+            postsByThread.add(posts);
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Todos los hilos escriben en las mismas etiquetas a la vez
+                for (int i = 0; i < posts.size(); i++) {
+                    tagIndex.add("tag-" + (i % tags), posts.get(i));
+                    tagIndex.add("comun", posts.get(i));
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        Map<String, List<Post>> groups = tagIndex.groupsWithAtLeast(1);
+        assertEquals(tags + 1, groups.size());
+        assertEquals(threads * postsPerThread, groups.get("comun").size());
+        for (int i = 0; i < tags; i++) {
+            assertEquals(threads * postsPerThread / tags, groups.get("tag-" + i).size());
+        }
+        for (List<Post> posts : postsByThread) {
+            posts.forEach(post -> assertTrue(tagIndex.postIds("comun").contains(post.getId())));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.album;
+
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
+import com.harmoniChat.app_hc.configuration.TextAnalyticsConfig;
+import com.harmoniChat.app_hc.entities_repositories_and_services.post.Post;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TextAnalysisServiceTest {
+
+    @Mock
+    private TextAnalyticsConfig textConfig;
+
+    @Mock
+    private RestTemplate textRestTemplate;
+
+    @Mock
+    private PostAnalysisService postAnalysisService;
+
+    @Mock
+    private OutboundApiGovernor outboundGovernor;
+
+    private AlbumAnalysisExecutor analysisExecutor;
+    private TextAnalysisService textAnalysisService;
+    private final UUID familyId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        analysisExecutor = new AlbumAnalysisExecutor(new SimpleMeterRegistry(), true, 4, 10, 4, Duration.ofSeconds(5));
+        textAnalysisService = new TextAnalysisService(textConfig, textRestTemplate, outboundGovernor,
+                postAnalysisService, analysisExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        analysisExecutor.shutdown();
+    }
+
+    private Map<String, List<Post>> analyze(List<Post> posts) {
+        TagIndex tagIndex = new TagIndex();
+        textAnalysisService.analyzeTexts(posts, 20, tagIndex);
+        return tagIndex.groupsWithAtLeast(1);
+    }
+
+    private Post post(String description) {
+        return Post.builder().id(UUID.randomUUID()).familyId(familyId).description(description).build();
+    }
+
+    // Sin análisis guardados: todos los posts van a Azure
+    private void allowOutboundCalls() {
+        when(postAnalysisService.findCurrent(eq(PostAnalysis.Kind.TEXT), anyMap(), anyString())).thenReturn(Map.of());
+        when(textConfig.getEndpoint()).thenReturn("https://text.test");
+        when(outboundGovernor.execute(eq(OutboundApiGovernor.Provider.AZURE_TEXT), eq(familyId), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(2).get());
+    }
+
+    // Responde con una frase clave por documento igual a su texto
+    @SuppressWarnings("unchecked")
+    private void echoKeyPhrases() {
+        when(textRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+                .thenAnswer(invocation -> {
+                    HttpEntity<Map<String, Object>> request = invocation.getArgument(2);
+                    List<Map<String, Object>> documents = (List<Map<String, Object>>) request.getBody().get("documents");
+                    List<Map<String, Object>> results = new ArrayList<>();
+                    for (Map<String, Object> document : documents.reversed()) {
+                        results.add(Map.of("id", document.get("id"), "keyPhrases", List.of(document.get("text"))));
+                    }
+                    return ResponseEntity.ok(Map.of("documents", results, "errors", List.of()));
+                });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAnalyzeTexts_SendsPostsInBatchesUpToDocumentLimit() {
+        when(textConfig.getDocumentsPerRequest()).thenReturn(10);
+        allowOutboundCalls();
+        echoKeyPhrases();
+        List<Post> posts = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            posts.add(post("texto " + i));
+        }
+
+        Map<String, List<Post>> groups = analyze(posts);
+
+        ArgumentCaptor<HttpEntity<Map<String, Object>>> requests = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(textRestTemplate, times(2)).exchange(anyString(), eq(HttpMethod.POST), requests.capture(), eq(Map.class));
+        List<Integer> sizes = requests.getAllValues().stream()
+                .map(request -> ((List<?>) request.getBody().get("documents")).size())
+                .sorted()
+                .toList();
+        assertEquals(List.of(5, 10), sizes);
+
+        // Cada frase vuelve a su post aunque la respuesta venga en otro orden
+        for (int i = 0; i < 15; i++) {
+            assertEquals(List.of(posts.get(i)), groups.get("texto " + i));
+        }
+        verify(postAnalysisService, times(15)).store(eq(PostAnalysis.Kind.TEXT), any(), any(), any(), any());
+    }
+
+    @Test
+    void testAnalyzeTexts_DocumentErrorsOnlyAffectThatPost() {
+        when(textConfig.getDocumentsPerRequest()).thenReturn(10);
+        allowOutboundCalls();
+        Post valid = post("cumpleaños de la abuela");
+        Post rejected = post("texto inválido");
+        when(textRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(
+                        "documents", List.of(Map.of("id", "0", "keyPhrases", List.of("cumpleaños", "abuela"))),
+                        "errors", List.of(Map.of("id", "1", "error", Map.of("code", "InvalidArgument"))))));
+
+        Map<String, List<Post>> groups = analyze(List.of(valid, rejected));
+
+        assertEquals(List.of(valid), groups.get("cumpleaños"));
+        assertEquals(List.of(valid), groups.get("abuela"));
+        verify(postAnalysisService).store(PostAnalysis.Kind.TEXT, valid.getId(),
+                PostAnalysisService.fingerprint("cumpleaños de la abuela"), TextAnalysisService.ANALYSIS_VERSION,
+                List.of("cumpleaños", "abuela"));
+        verify(postAnalysisService, never()).store(any(), eq(rejected.getId()), any(), any(), any());
+    }
+
+    @Test
+    void testAnalyzeTexts_UsesStoredKeyPhrasesAndKeepsLocationTag() {
+        Post post = Post.builder().id(UUID.randomUUID()).familyId(familyId)
+                .description("paseo").location("Cali, Valle del Cauca").build();
+        when(postAnalysisService.findCurrent(eq(PostAnalysis.Kind.TEXT), anyMap(), anyString()))
+                .thenReturn(Map.of(post.getId(), List.of("paseo")));
+
+        Map<String, List<Post>> groups = analyze(List.of(post));
+
+        assertEquals(List.of(post), groups.get("paseo"));
+        assertEquals(List.of(post), groups.get("cali"));
+        verifyNoInteractions(textRestTemplate);
+    }
+}
@@ -0,0 +1,141 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.family.Family;
+import com.harmoniChat.app_hc.entities_repositories_and_services.user.User;
+import com.harmoniChat.app_hc.entities_repositories_and_services.user.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(org.mockito.junit.jupiter.MockitoExtension.class)
+class ChatReadStateServiceTest {
+
+    @Mock
+    private ChatReadStateRepository readStateRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private ChatReadStateService service;
+
+    private final UUID familyId = UUID.randomUUID();
+    private final UUID userId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        service = new ChatReadStateService(readStateRepository, messageRepository, userRepository);
+    }
+
+    private static ChatReadStateRepository.UnreadRow row(UUID familyId, long unread, long lastReadSeq, long latestSeq) {
+        return new ChatReadStateRepository.UnreadRow() {
+            public UUID getFamilyId() { return familyId; }
+            public long getUnreadCount() { return unread; }
+            public long getLastReadSeq() { return lastReadSeq; }
+            public long getLatestSeq() { return latestSeq; }
+        };
+    }
+
+    @Test
+    void testUnreadCount_ReadsCounterWithoutCountingMessages() {
+        // Seq 16-20: uno propio y uno eliminado, el trigger dejó 3 de los demás
+        when(readStateRepository.findUnreadRow(familyId, userId)).thenReturn(Optional.of(row(familyId, 3, 15, 20)));
+
+        ChatReadStateService.UnreadCount count = service.unreadCount(familyId, userId);
+
+        assertEquals(3, count.unread());
+        assertEquals(15, count.lastReadSeq());
+        assertEquals(20, count.latestSeq());
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void testUnreadCount_MemberWithoutRowHasNothingUnread() {
+        when(readStateRepository.findUnreadRow(familyId, userId)).thenReturn(Optional.empty());
+        when(messageRepository.findLatestSeqByFamilyId(familyId)).thenReturn(4L);
+
+        ChatReadStateService.UnreadCount count = service.unreadCount(familyId, userId);
+
+        assertEquals(0, count.unread());
+        assertEquals(4, count.latestSeq());
+    }
+
+    @Test
+    void testMarkRead_LocksFamilyCounterBeforeAdvancing() {
+        when(readStateRepository.lockLatestSeq(familyId)).thenReturn(Optional.of(10L));
+        when(readStateRepository.findUnreadRow(familyId, userId)).thenReturn(Optional.of(row(familyId, 0, 10, 10)));
+
+        ChatReadStateService.UnreadCount afterRead = service.markRead(familyId, userId, null);
+
+        assertEquals(0, afterRead.unread());
+        assertEquals(10, afterRead.lastReadSeq());
+        // Con el contador bloqueado, ningún envío concurrente queda fuera del recálculo
+        InOrder inOrder = inOrder(readStateRepository);
+        inOrder.verify(readStateRepository).lockLatestSeq(familyId);
+        inOrder.verify(readStateRepository).advanceLastReadSeq(familyId, userId, 10L);
+    }
+
+    @Test
+    void testMarkRead_NeverPastLatestSeq() {
+        when(readStateRepository.lockLatestSeq(familyId)).thenReturn(Optional.of(10L));
+        when(readStateRepository.findUnreadRow(familyId, userId)).thenReturn(Optional.of(row(familyId, 0, 10, 10)));
+
+        service.markRead(familyId, userId, 99L);
+
+        verify(readStateRepository).advanceLastReadSeq(familyId, userId, 10L);
+    }
+
+    @Test
+    void testMarkRead_EmptyFamilyWritesNothing() {
+        when(readStateRepository.lockLatestSeq(familyId)).thenReturn(Optional.empty());
+        when(messageRepository.findLatestSeqByFamilyId(familyId)).thenReturn(0L);
+
+        assertEquals(0, service.markRead(familyId, userId, null).unread());
+        verify(readStateRepository, never()).advanceLastReadSeq(any(), any(), anyLong());
+    }
+
+    @Test
+    void testUnreadCounts_OneQueryForRequestedFamilies() {
+        UUID otherFamily = UUID.randomUUID();
+        UUID newFamily = UUID.randomUUID();
+        when(readStateRepository.findUnreadRows(userId))
+                .thenReturn(List.of(row(familyId, 6, 2, 8), row(otherFamily, 1, 7, 8)));
+        when(messageRepository.findLatestSeqByFamilyId(newFamily)).thenReturn(3L);
+
+        List<ChatReadStateService.UnreadCount> counts =
+                service.unreadCounts(userId, List.of(familyId, otherFamily, newFamily));
+
+        assertEquals(List.of(6L, 1L, 0L), counts.stream().map(ChatReadStateService.UnreadCount::unread).toList());
+        verify(readStateRepository, times(1)).findUnreadRows(userId);
+        verify(readStateRepository, never()).findUnreadRow(any(), any());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void testUnreadCounts_DefaultsToUserFamilyAndReadStates() {
+        UUID otherFamily = UUID.randomUUID();
+        User user = new User();
+        user.setFamilyId(Family.builder().id(familyId).build());
+        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(readStateRepository.findUnreadRows(userId))
+                .thenReturn(List.of(row(otherFamily, 2, 5, 7), row(familyId, 4, 1, 5)));
+
+        List<ChatReadStateService.UnreadCount> counts = service.unreadCounts(userId, null);
+
+        // Primero la familia del usuario, luego las demás con marca
+        assertEquals(List.of(familyId, otherFamily), counts.stream().map(ChatReadStateService.UnreadCount::familyId).toList());
+        assertEquals(List.of(4L, 2L), counts.stream().map(ChatReadStateService.UnreadCount::unread).toList());
+    }
+}
@@ -0,0 +1,260 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.blob_storage.BlobStorageService;
+import com.harmoniChat.app_hc.entities_repositories_and_services.family.Family;
+import com.harmoniChat.app_hc.entities_repositories_and_services.family.FamilyRepository;
+import com.harmoniChat.app_hc.entities_repositories_and_services.user.User;
+import com.harmoniChat.app_hc.entities_repositories_and_services.user.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.*;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(org.mockito.junit.jupiter.MockitoExtension.class)
+class MessageServiceTest {
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private FamilyRepository familyRepository;
+
+    @Mock
+    private BlobStorageService blobStorageService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private RecentMessageCache recentMessageCache;
+
+    @Mock
+    private ChatReadStateService chatReadStateService;
+
+    @Mock
+    private ChatAuthorDirectory authorDirectory;
+
+    @InjectMocks
+    private MessageService messageService;
+
+    private final UUID familyId = UUID.randomUUID();
+    private final UUID authorId = UUID.randomUUID();
+
+    private List<Message> newestFirst(int count) {
+        LocalDateTime now = LocalDateTime.now();
+        Family family = Family.builder().id(familyId).build();
+        User author = User.builder().id(authorId).build();
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(Message.builder()
+                    .id(UUID.randomUUID())
+                    .content("mensaje " + i)
+                    .date(now.minusMinutes(i))
+                    .user(author)
+                    .family(family)
+                    .build());
+        }
+        return messages;
+    }
+
+    @Test
+    void testGetHistoryPage_FirstPageWithMore() {
+        List<Message> rows = newestFirst(3);
+        when(messageRepository.findHistoryPage(familyId, 3)).thenReturn(rows);
+        when(authorDirectory.displayName(authorId)).thenReturn("Ana Pérez");
+
+        MessageService.MessagePage page = messageService.getHistoryPage(familyId, null, 2);
+
+        assertTrue(page.hasMore());
+        assertEquals(2, page.messages().size());
+        // Orden cronológico: el más antiguo de la página primero
+        assertEquals(rows.get(1).getId(), page.messages().get(0).id());
+        assertEquals(rows.get(0).getId(), page.messages().get(1).id());
+        assertEquals("Ana Pérez", page.messages().get(0).authorName());
+        assertEquals(familyId, page.messages().get(0).familyId());
+
+        MessageCursor cursor = MessageCursor.decode(page.nextCursor());
+        assertEquals(rows.get(1).getId(), cursor.id());
+        assertEquals(rows.get(1).getDate(), cursor.date());
+    }
+
+    @Test
+    void testGetHistoryPage_WithCursorLastPage() {
+        Message anchor = newestFirst(1).get(0);
+        String cursor = MessageCursor.of(anchor).encode();
+        List<Message> rows = newestFirst(1);
+        when(messageRepository.findHistoryPageBefore(familyId, anchor.getDate(), anchor.getId(), 51))
+                .thenReturn(rows);
+
+        MessageService.MessagePage page = messageService.getHistoryPage(familyId, cursor, 50);
+
+        assertFalse(page.hasMore());
+        assertNull(page.nextCursor());
+        assertEquals(1, page.messages().size());
+    }
+
+    @Test
+    void testGetHistoryPage_InvalidCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> messageService.getHistoryPage(familyId, "no-es-un-cursor", 50));
+        verifyNoInteractions(messageRepository);
+    }
+
+    private MessageSummary withSeq(long seq) {
+        return new MessageSummary(UUID.randomUUID(), familyId, authorId,
+                "hola", "TEXT", null, "SENT", seq, LocalDateTime.now());
+    }
+
+    private static List<Long> seqs(List<ChatMessageView> views) {
+        return views.stream().map(ChatMessageView::seq).toList();
+    }
+
+    @Test
+    void testGetNewMessages_ReportsGaps() {
+        when(messageRepository.findNewMessages(familyId, 10L, PageRequest.of(0, 201)))
+                .thenReturn(List.of(withSeq(11), withSeq(14), withSeq(15)));
+
+        MessageService.MessageDelta delta = messageService.getNewMessages(familyId, 10L, null, 200);
+
+        assertEquals(3, delta.messages().size());
+        assertEquals(15, delta.latestSeq());
+        assertFalse(delta.hasMore());
+        assertEquals(List.of(new MessageService.SeqRange(12, 13)), delta.gaps());
+        verify(messageRepository, never()).findLatestSeqByFamilyId(any());
+    }
+
+    @Test
+    void testGetNewMessages_Truncated() {
+        when(messageRepository.findNewMessages(familyId, 0L, PageRequest.of(0, 3)))
+                .thenReturn(List.of(withSeq(1), withSeq(2), withSeq(3)));
+        when(messageRepository.findLatestSeqByFamilyId(familyId)).thenReturn(40L);
+
+        MessageService.MessageDelta delta = messageService.getNewMessages(familyId, 0L, null, 2);
+
+        assertTrue(delta.hasMore());
+        assertEquals(2, delta.messages().size());
+        assertEquals(40, delta.latestSeq());
+    }
+
+    @Test
+    void testGetNewMessages_ResolvesLastMessageId() {
+        UUID lastMessageId = UUID.randomUUID();
+        when(messageRepository.findSeqByIdAndFamilyId(lastMessageId, familyId)).thenReturn(Optional.of(7L));
+        when(messageRepository.findNewMessages(familyId, 7L, PageRequest.of(0, 201))).thenReturn(List.of());
+
+        MessageService.MessageDelta delta = messageService.getNewMessages(familyId, null, lastMessageId, 200);
+
+        assertEquals(7, delta.afterSeq());
+        assertEquals(7, delta.latestSeq());
+        assertTrue(delta.messages().isEmpty());
+        assertFalse(delta.resyncRequired());
+    }
+
+    @Test
+    void testGetNewMessages_UnknownLastMessageRequiresResync() {
+        UUID lastMessageId = UUID.randomUUID();
+        when(messageRepository.findSeqByIdAndFamilyId(lastMessageId, familyId)).thenReturn(Optional.empty());
+        when(messageRepository.findLatestSeqByFamilyId(familyId)).thenReturn(5L);
+
+        MessageService.MessageDelta delta = messageService.getNewMessages(familyId, null, lastMessageId, 200);
+
+        assertTrue(delta.resyncRequired());
+        assertEquals(5, delta.latestSeq());
+    }
+
+    @Test
+    void testGetLatestMessages_LimitIsPushedToQuery() {
+        when(recentMessageCache.capacity()).thenReturn(20);
+        when(messageRepository.findLatestMessagesByFamily(familyId, PageRequest.of(0, 50))).thenReturn(List.of());
+
+        messageService.getLatestMessages(familyId, 50);
+
+        verify(messageRepository).findLatestMessagesByFamily(familyId, PageRequest.of(0, 50));
+    }
+
+    @Test
+    void testGetLatestMessages_MissSeedsCache() {
+        List<MessageSummary> rows = List.of(withSeq(3), withSeq(2), withSeq(1));
+        when(recentMessageCache.capacity()).thenReturn(100);
+        when(messageRepository.findLatestMessagesByFamily(familyId, PageRequest.of(0, 100))).thenReturn(rows);
+
+        List<ChatMessageView> result = messageService.getLatestMessages(familyId, 2);
+
+        assertEquals(List.of(3L, 2L), seqs(result));
+        verify(recentMessageCache).seed(familyId, rows);
+    }
+
+    @Test
+    void testGetLatestMessages_CacheHitSkipsDatabase() {
+        List<MessageSummary> cached = List.of(withSeq(2), withSeq(1));
+        when(recentMessageCache.latest(familyId, 50)).thenReturn(Optional.of(cached));
+        when(authorDirectory.displayName(authorId)).thenReturn("Ana Pérez");
+
+        List<ChatMessageView> result = messageService.getLatestMessages(familyId, 50);
+
+        // Misma vista que el resto del chat: nombre del directorio, sin estado ni nombres por separado
+        assertEquals(List.of(2L, 1L), seqs(result));
+        assertEquals("Ana Pérez", result.get(0).authorName());
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void testGetNewMessages_CacheHitSkipsDatabase() {
+        when(recentMessageCache.since(familyId, 4L)).thenReturn(Optional.of(List.of(withSeq(5), withSeq(6))));
+
+        MessageService.MessageDelta delta = messageService.getNewMessages(familyId, 4L, null, 200);
+
+        assertEquals(2, delta.messages().size());
+        assertEquals(6, delta.latestSeq());
+        assertTrue(delta.gaps().isEmpty());
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void testGetLatestMessages_LimitIsCapped() {
+        when(recentMessageCache.capacity()).thenReturn(100);
+        when(messageRepository.findLatestMessagesByFamily(familyId, PageRequest.of(0, 200))).thenReturn(List.of());
+
+        messageService.getLatestMessages(familyId, 100_000);
+
+        verify(messageRepository).findLatestMessagesByFamily(familyId, PageRequest.of(0, 200));
+    }
+
+    @Test
+    void testMarkMessagesAsRead_SingleBulkUpdate() {
+        UUID userId = UUID.randomUUID();
+        when(messageRepository.markAsReadUpTo(familyId, userId, Long.MAX_VALUE)).thenReturn(12);
+
+        int updated = messageService.markMessagesAsRead(familyId, userId, null);
+
+        assertEquals(12, updated);
+        verify(messageRepository).markAsReadUpTo(familyId, userId, Long.MAX_VALUE);
+        verify(recentMessageCache).invalidate(familyId);
+        verify(chatReadStateService).markRead(familyId, userId, null);
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    void testMarkMessagesAsRead_UpToSeqWithoutChanges() {
+        UUID userId = UUID.randomUUID();
+        when(messageRepository.markAsReadUpTo(familyId, userId, 30L)).thenReturn(0);
+
+        int updated = messageService.markMessagesAsRead(familyId, userId, 30L);
+
+        assertEquals(0, updated);
+        verify(recentMessageCache, never()).invalidate(any());
+    }
+}
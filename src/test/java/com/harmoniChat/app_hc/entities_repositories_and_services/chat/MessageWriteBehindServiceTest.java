@@ -0,0 +1,164 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import com.harmoniChat.app_hc.exceptions.UserNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(org.mockito.junit.jupiter.MockitoExtension.class)
+class MessageWriteBehindServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ChatAuthorDirectory authorDirectory;
+
+    @Mock
+    private RecentMessageCache recentMessageCache;
+
+    private MessageWriteBehindService service;
+    private SimpleMeterRegistry meterRegistry;
+
+    private final UUID userId = UUID.randomUUID();
+    private final UUID familyId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        service = new MessageWriteBehindService(jdbcTemplate, transactionManager, authorDirectory,
+                recentMessageCache, meterRegistry = new SimpleMeterRegistry(), 2, 100, Duration.ofMillis(50),
+                Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testSubmit_DefersSeqAndSideEffectsUntilCommit() {
+        when(authorDirectory.find(userId))
+                .thenReturn(Optional.of(new ChatAuthorDirectory.ChatAuthor(userId, "Ana", "Pérez")));
+
+        MessageWriteBehindService.Accepted accepted = service.submit(userId, familyId, "hola", "TEXT", null);
+
+        assertNull(accepted.message().seq());
+        assertEquals(userId, accepted.message().userId());
+        assertFalse(accepted.committed().isDone());
+        // Sin escribir aún: nada se reserva ni se publica
+        verifyNoInteractions(jdbcTemplate, recentMessageCache);
+    }
+
+    @Test
+    void testWriter_AssignsSeqInsideTransactionAndPublishesInOrder() throws Exception {
+        when(authorDirectory.find(userId))
+                .thenReturn(Optional.of(new ChatAuthorDirectory.ChatAuthor(userId, "Ana", "Pérez")));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq(familyId), eq(2))).thenReturn(152L);
+
+        MessageWriteBehindService.Accepted first = service.submit(userId, familyId, "hola", "TEXT", null);
+        MessageWriteBehindService.Accepted second = service.submit(userId, familyId, "¿cómo están?", "TEXT", null);
+        service.start();
+        service.shutdown();
+
+        assertEquals(151L, first.committed().get(1, TimeUnit.SECONDS).seq());
+        assertEquals(152L, second.committed().get(1, TimeUnit.SECONDS).seq());
+        assertEquals(first.message().id(), first.committed().get().id());
+
+        // La reserva y la inserción van en la misma transacción; la caché solo después del commit
+        InOrder inOrder = inOrder(transactionManager, jdbcTemplate, recentMessageCache);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(jdbcTemplate).queryForObject(anyString(), eq(Long.class), eq(familyId), eq(2));
+        inOrder.verify(jdbcTemplate).batchUpdate(anyString(), anyList(), eq(2), any(ParameterizedPreparedStatementSetter.class));
+        inOrder.verify(transactionManager).commit(any());
+        inOrder.verify(recentMessageCache).append(familyId, first.committed().get());
+        inOrder.verify(recentMessageCache).append(familyId, second.committed().get());
+    }
+
+    @Test
+    void testWriter_DroppedMessageCompletesExceptionally() throws Exception {
+        when(authorDirectory.find(userId))
+                .thenReturn(Optional.of(new ChatAuthorDirectory.ChatAuthor(userId, "Ana", "Pérez")));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq(familyId), eq(1)))
+                .thenThrow(new DataIntegrityViolationException("familia eliminada"));
+
+        MessageWriteBehindService.Accepted accepted = service.submit(userId, familyId, "hola", "TEXT", null);
+        service.start();
+        service.shutdown();
+
+        assertThrows(ExecutionException.class, () -> accepted.committed().get(1, TimeUnit.SECONDS));
+        verifyNoInteractions(recentMessageCache);
+    }
+
+    @Test
+    void testWriter_TransactionFailureDropsAndCompletesEveryMessage() throws Exception {
+        when(authorDirectory.find(userId))
+                .thenReturn(Optional.of(new ChatAuthorDirectory.ChatAuthor(userId, "Ana", "Pérez")));
+        when(transactionManager.getTransaction(any()))
+                .thenThrow(new CannotCreateTransactionException("pool agotado"));
+
+        MessageWriteBehindService.Accepted first = service.submit(userId, familyId, "hola", "TEXT", null);
+        MessageWriteBehindService.Accepted second = service.submit(userId, familyId, "¿cómo están?", "TEXT", null);
+        service.start();
+        service.shutdown();
+
+        // Ningún mensaje aceptado queda sin respuesta: la difusión se entera y el descarte se cuenta
+        assertThrows(ExecutionException.class, () -> first.committed().get(1, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> second.committed().get(1, TimeUnit.SECONDS));
+        assertEquals(2, meterRegistry.get("chat.write_behind.messages").tag("result", "dropped").counter().count());
+        verifyNoInteractions(recentMessageCache);
+    }
+
+    @Test
+    void testWriter_CacheFailureAfterCommitStillConfirmsMessage() throws Exception {
+        when(authorDirectory.find(userId))
+                .thenReturn(Optional.of(new ChatAuthorDirectory.ChatAuthor(userId, "Ana", "Pérez")));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq(familyId), eq(1))).thenReturn(7L);
+        doThrow(new IllegalStateException("caché no disponible")).when(recentMessageCache).append(eq(familyId), any());
+
+        MessageWriteBehindService.Accepted accepted = service.submit(userId, familyId, "hola", "TEXT", null);
+        service.start();
+        service.shutdown();
+
+        // Ya está escrito: se confirma una sola vez y la caché de la familia se descarta
+        assertEquals(7L, accepted.committed().get(1, TimeUnit.SECONDS).seq());
+        verify(transactionManager).commit(any());
+        verify(recentMessageCache).invalidate(familyId);
+    }
+
+    @Test
+    void testSubmit_RejectsWhenQueueIsFull() {
+        when(authorDirectory.find(userId))
+                .thenReturn(Optional.of(new ChatAuthorDirectory.ChatAuthor(userId, "Ana", "Pérez")));
+
+        service.submit(userId, familyId, "uno", "TEXT", null);
+        service.submit(userId, familyId, "dos", "TEXT", null);
+
+        assertThrows(IllegalStateException.class, () -> service.submit(userId, familyId, "tres", "TEXT", null));
+        // El rechazo no consume ningún seq
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testSubmit_UnknownUser() {
+        when(authorDirectory.find(userId)).thenReturn(Optional.empty());
+
+        assertThrows(UserNotFoundException.class, () -> service.submit(userId, familyId, "hola", "TEXT", null));
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
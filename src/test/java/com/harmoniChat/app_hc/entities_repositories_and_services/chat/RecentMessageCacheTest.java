@@ -0,0 +1,151 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentMessageCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RecentMessageCache cache;
+    private final UUID familyId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new RecentMessageCache(3, 1, Duration.ofMinutes(5), "simple", meterRegistry);
+    }
+
+    private MessageSummary withSeq(long seq) {
+        return new MessageSummary(UUID.randomUUID(), familyId, UUID.randomUUID(),
+                "mensaje " + seq, "TEXT", null, "SENT", seq, LocalDateTime.now());
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("chat.recent_cache.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    void testLatest_MissWithoutBuffer() {
+        assertTrue(cache.latest(familyId, 2).isEmpty());
+        assertEquals(1, count("miss"));
+    }
+
+    @Test
+    void testAppend_IgnoredWithoutBuffer() {
+        cache.append(familyId, withSeq(1));
+
+        assertTrue(cache.since(familyId, 0).isEmpty());
+    }
+
+    @Test
+    void testSeedAndAppend_RingBufferDropsOldest() {
+        cache.seed(familyId, List.of(withSeq(2), withSeq(1)));
+        cache.append(familyId, withSeq(3));
+        cache.append(familyId, withSeq(4));
+
+        Optional<List<MessageSummary>> latest = cache.latest(familyId, 3);
+        assertTrue(latest.isPresent());
+        assertEquals(List.of(4L, 3L, 2L), latest.get().stream().map(MessageSummary::seq).toList());
+        assertEquals(1, count("hit"));
+
+        // seq 1 salió del buffer: una sincronización desde 0 ya no se puede responder en memoria
+        assertTrue(cache.since(familyId, 0).isEmpty());
+        assertEquals(List.of(3L, 4L), cache.since(familyId, 2).orElseThrow().stream().map(MessageSummary::seq).toList());
+    }
+
+    @Test
+    void testAppend_WrapsAroundWithoutChangingEarlierSnapshots() {
+        cache.seed(familyId, List.of(withSeq(1)));
+        cache.append(familyId, withSeq(2));
+        List<MessageSummary> before = cache.latest(familyId, 2).orElseThrow();
+
+        // Varias vueltas completas al buffer circular
+        for (long seq = 3; seq <= 10; seq++) {
+            cache.append(familyId, withSeq(seq));
+        }
+
+        assertEquals(List.of(10L, 9L, 8L), cache.latest(familyId, 3).orElseThrow().stream().map(MessageSummary::seq).toList());
+        assertEquals(List.of(9L, 10L), cache.since(familyId, 8).orElseThrow().stream().map(MessageSummary::seq).toList());
+        assertTrue(cache.since(familyId, 6).isEmpty());
+        // Lo que ya se devolvió es una copia: los envíos posteriores no la cambian
+        assertEquals(List.of(2L, 1L), before.stream().map(MessageSummary::seq).toList());
+    }
+
+    @Test
+    void testSeed_DoesNotReplaceExistingBuffer() {
+        cache.seed(familyId, List.of(withSeq(2), withSeq(1)));
+        cache.append(familyId, withSeq(3));
+
+        // Una lectura hecha antes del envío de seq 3 no debe borrarlo
+        cache.seed(familyId, List.of(withSeq(2), withSeq(1)));
+
+        assertEquals(List.of(3L, 2L, 1L),
+                cache.latest(familyId, 3).orElseThrow().stream().map(MessageSummary::seq).toList());
+    }
+
+    @Test
+    void testSeed_DroppedWhenOlderThanLatestSend() {
+        // seq 3 se confirmó después de la lectura de la base de datos y antes de la carga
+        cache.append(familyId, withSeq(3));
+        cache.seed(familyId, List.of(withSeq(2), withSeq(1)));
+
+        assertTrue(cache.since(familyId, 0).isEmpty());
+
+        cache.seed(familyId, List.of(withSeq(3), withSeq(2), withSeq(1)));
+        assertEquals(3, cache.since(familyId, 0).orElseThrow().size());
+    }
+
+    @Test
+    void testSeed_SmallFamilyKeepsFullHistory() {
+        cache.seed(familyId, List.of(withSeq(1)));
+
+        assertEquals(1, cache.latest(familyId, 3).orElseThrow().size());
+        assertEquals(1, cache.since(familyId, 0).orElseThrow().size());
+    }
+
+    @Test
+    void testAppend_OutOfOrderInvalidates() {
+        cache.seed(familyId, List.of(withSeq(1)));
+        cache.append(familyId, withSeq(3));
+
+        assertTrue(cache.latest(familyId, 1).isEmpty());
+    }
+
+    @Test
+    void testInvalidate() {
+        cache.seed(familyId, List.of(withSeq(1)));
+        cache.invalidate(familyId);
+
+        assertTrue(cache.since(familyId, 0).isEmpty());
+    }
+
+    @Test
+    void testZeroCapacity_DisablesCache() {
+        RecentMessageCache disabled = new RecentMessageCache(0, 1, Duration.ofMinutes(5), "simple", meterRegistry);
+
+        disabled.seed(familyId, List.of(withSeq(1)));
+        disabled.append(familyId, withSeq(2));
+
+        assertTrue(disabled.since(familyId, 0).isEmpty());
+        assertTrue(disabled.latest(familyId, 1).isEmpty());
+    }
+
+    @Test
+    void testRelayBroker_DisablesCache() {
+        RecentMessageCache relay = new RecentMessageCache(3, 1, Duration.ofMinutes(5), "relay", meterRegistry);
+
+        relay.seed(familyId, List.of(withSeq(1)));
+
+        assertEquals(0, relay.capacity());
+        assertTrue(relay.latest(familyId, 1).isEmpty());
+    }
+}
@@ -0,0 +1,46 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatHistoryBudgetTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private static ChatMessage turn(String role, int chars) {
+        return new ChatMessage(role, "x".repeat(chars));
+    }
+
+    @Test
+    void testFit_KeepsHistoryWithinBudget() {
+        ChatHistoryBudget budget = new ChatHistoryBudget(100, meterRegistry);
+        List<ChatMessage> history = List.of(turn("user", 40), turn("assistant", 40));
+
+        assertEquals(history, budget.fit(history));
+        assertEquals(0, meterRegistry.get("chatbot.history.trimmed_turns").counter().count());
+    }
+
+    @Test
+    void testFit_DropsOldestTurnsAndStartsWithUser() {
+        // Cada turno de 160 caracteres cuesta 40 + 4 tokens: caben dos en 100
+        ChatHistoryBudget budget = new ChatHistoryBudget(100, meterRegistry);
+        ChatMessage oldest = turn("user", 160);
+        ChatMessage reply = turn("assistant", 160);
+        ChatMessage latest = turn("user", 160);
+        ChatMessage latestReply = turn("assistant", 160);
+
+        List<ChatMessage> kept = budget.fit(List.of(oldest, reply, latest, latestReply));
+
+        assertEquals(List.of(latest, latestReply), kept);
+        assertEquals(2, meterRegistry.get("chatbot.history.trimmed_turns").counter().count());
+    }
+
+    @Test
+    void testFit_NullHistory() {
+        assertTrue(new ChatHistoryBudget(100, meterRegistry).fit(null).isEmpty());
+    }
+}
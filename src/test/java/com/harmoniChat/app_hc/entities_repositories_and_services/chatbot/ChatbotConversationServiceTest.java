@@ -0,0 +1,171 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.Invocation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(org.mockito.junit.jupiter.MockitoExtension.class)
+class ChatbotConversationServiceTest {
+
+    @Mock
+    private GeminiChatService chatService;
+
+    @Mock
+    private ChatbotConversationRepository conversationRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UUID conversationId = UUID.randomUUID();
+    private final UUID ownerId = UUID.randomUUID();
+
+    private ChatbotConversationService service(int compactAfterTurns, int keepRecentTurns, boolean persist) {
+        return new ChatbotConversationService(chatService, conversationRepository, new ObjectMapper(), meterRegistry,
+                100, Duration.ofHours(1), compactAfterTurns, keepRecentTurns, persist);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<List<ChatMessage>> historyCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    @Test
+    void testReply_KeepsHistoryOnServer() {
+        ChatbotConversationService service = service(20, 10, false);
+        when(chatService.chatResponse(anyString(), anyList()))
+                .thenReturn(Mono.just("primera"), Mono.just("segunda"));
+
+        service.reply(conversationId, ownerId, "hola", "hola").block();
+        service.reply(conversationId, ownerId, "¿y ahora?", "¿y ahora?").block();
+
+        ArgumentCaptor<List<ChatMessage>> history = historyCaptor();
+        verify(chatService, times(2)).chatResponse(anyString(), history.capture());
+        assertTrue(history.getAllValues().get(0).isEmpty());
+        assertEquals(List.of(new ChatMessage("user", "hola"), new ChatMessage("assistant", "primera")),
+                history.getAllValues().get(1));
+    }
+
+    @Test
+    void testReply_StoresOriginalMessageNotPrompt() {
+        ChatbotConversationService service = service(20, 10, false);
+        when(chatService.chatResponse(anyString(), anyList())).thenReturn(Mono.just("ok"));
+
+        service.reply(conversationId, ownerId, "me siento triste", "me siento triste [Contexto emocional]").block();
+        service.reply(conversationId, ownerId, "gracias", "gracias").block();
+
+        ArgumentCaptor<List<ChatMessage>> history = historyCaptor();
+        verify(chatService, times(2)).chatResponse(anyString(), history.capture());
+        assertEquals("me siento triste", history.getAllValues().get(1).get(0).getContent());
+    }
+
+    @Test
+    void testReply_RejectsOtherOwner() {
+        ChatbotConversationService service = service(20, 10, false);
+        when(chatService.chatResponse(anyString(), anyList())).thenReturn(Mono.just("ok"));
+        service.reply(conversationId, ownerId, "hola", "hola").block();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.reply(conversationId, UUID.randomUUID(), "hola", "hola"));
+    }
+
+    @Test
+    void testReply_CompactsOldTurnsIntoSummary() {
+        ChatbotConversationService service = service(4, 2, false);
+        when(chatService.chatResponse(anyString(), anyList())).thenReturn(Mono.just("ok"));
+        when(chatService.summarize(isNull(), anyList())).thenReturn(Mono.just("resumen"));
+
+        // Tres intercambios = 6 turnos > 4: se resumen los 4 más antiguos
+        service.reply(conversationId, ownerId, "uno", "uno").block();
+        service.reply(conversationId, ownerId, "dos", "dos").block();
+        service.reply(conversationId, ownerId, "tres", "tres").block();
+        service.reply(conversationId, ownerId, "cuatro", "cuatro").block();
+
+        ArgumentCaptor<List<ChatMessage>> summarized = historyCaptor();
+        verify(chatService).summarize(isNull(), summarized.capture());
+        assertEquals(4, summarized.getValue().size());
+
+        ArgumentCaptor<List<ChatMessage>> history = historyCaptor();
+        verify(chatService, times(4)).chatResponse(anyString(), history.capture());
+        List<ChatMessage> last = history.getAllValues().get(3);
+        assertEquals(4, last.size());
+        assertTrue(last.get(0).getContent().contains("resumen"));
+        assertEquals("tres", last.get(2).getContent());
+        assertEquals(1, meterRegistry.get("chatbot.conversations.compactions").counter().count());
+    }
+
+    @Test
+    void testStreamReply_RecordsTurnWhenComplete() {
+        ChatbotConversationService service = service(20, 10, false);
+        when(chatService.streamChatResponse(anyString(), anyList())).thenReturn(Flux.just("Ho", "la"));
+        when(chatService.chatResponse(anyString(), anyList())).thenReturn(Mono.just("ok"));
+
+        service.streamReply(conversationId, ownerId, "hola", "hola").collectList().block();
+        service.reply(conversationId, ownerId, "otra", "otra").block();
+
+        ArgumentCaptor<List<ChatMessage>> history = historyCaptor();
+        verify(chatService).chatResponse(anyString(), history.capture());
+        assertEquals("Hola", history.getValue().get(1).getContent());
+    }
+
+    @Test
+    void testReply_LoadsPersistedConversation() {
+        ChatbotConversationService service = service(20, 10, true);
+        when(conversationRepository.findById(conversationId)).thenReturn(Optional.of(ChatbotConversation.builder()
+                .id(conversationId)
+                .ownerId(ownerId)
+                .summary("resumen previo")
+                .turns("[{\"role\":\"user\",\"content\":\"antes\"},{\"role\":\"assistant\",\"content\":\"respuesta\"}]")
+                .build()));
+        when(chatService.chatResponse(anyString(), anyList())).thenReturn(Mono.just("ok"));
+
+        service.reply(conversationId, ownerId, "hola", "hola").block();
+
+        ArgumentCaptor<List<ChatMessage>> history = historyCaptor();
+        verify(chatService).chatResponse(anyString(), history.capture());
+        assertEquals(4, history.getValue().size());
+        assertEquals("antes", history.getValue().get(2).getContent());
+        verify(conversationRepository, timeout(1000))
+                .upsert(eq(conversationId), eq(ownerId), eq("resumen previo"), contains("hola"));
+    }
+
+    @Test
+    void testReply_SavesSameConversationTwiceWithoutOverwritingNewerTurns() throws Exception {
+        ChatbotConversationService service = service(20, 10, true);
+        when(conversationRepository.findById(conversationId)).thenReturn(Optional.empty());
+        when(chatService.chatResponse(anyString(), anyList()))
+                .thenReturn(Mono.just("primera"), Mono.just("segunda"));
+
+        service.reply(conversationId, ownerId, "hola", "hola").block();
+        service.reply(conversationId, ownerId, "¿y ahora?", "¿y ahora?").block();
+
+        // Upsert nativo: nunca se hace merge de una entidad sin creation_date
+        verify(conversationRepository, timeout(1000))
+                .upsert(eq(conversationId), eq(ownerId), isNull(), contains("segunda"));
+        verify(conversationRepository, never()).save(any(ChatbotConversation.class));
+
+        // Los guardados llegan en orden: cada uno con más turnos que el anterior
+        ObjectMapper objectMapper = new ObjectMapper();
+        int previous = 0;
+        for (Invocation invocation : mockingDetails(conversationRepository).getInvocations()) {
+            if (invocation.getMethod().getName().equals("upsert")) {
+                int size = objectMapper.readTree(invocation.<String>getArgument(3)).size();
+                assertTrue(size > previous, "un guardado más viejo pisó uno más nuevo");
+                previous = size;
+            }
+        }
+        assertEquals(4, previous);
+    }
+}
@@ -0,0 +1,86 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmotionIntentMatcherTest {
+
+    private final EmotionIntentMatcher matcher = new EmotionIntentMatcher(EmotionIntentMatcher.DEFAULT_VOCABULARY);
+
+    @Test
+    void testMatch_IgnoresAccentsAndCase() {
+        assertEquals(Set.of("general"), matcher.match("¿Cómo está mi ESTADO DE ÁNIMO?"));
+        assertEquals(Set.of("tristeza", "miedo"), matcher.match("Hoy estoy TRISTE y un poco asustado..."));
+    }
+
+    @Test
+    void testDefaultVocabulary_MatchesPreviousKeywords() {
+        List.of("Quiero hablar de mis emociones", "Tengo un sentimiento raro", "No sé como me siento",
+                        "Revisa mi diario", "¿Cómo está mi estado de ánimo?", "Me falta ánimo", "Estoy triste",
+                        "Hoy estoy feliz", "Estoy enojado con mi hermano", "Me quedé asustado",
+                        "Necesito calma", "¡Qué sorpresa!")
+                .forEach(message -> assertTrue(matcher.isEmotionRelated(message), message));
+    }
+
+    @Test
+    void testDefaultVocabulary_DoesNotMatchWordsOutsidePreviousSet() {
+        // La detección anterior no agregaba el contexto emocional para estos mensajes
+        List.of("Estoy deprimido", "Lloré toda la tarde", "Me siento contento", "Me molesta el ruido",
+                        "Tengo ansiedad por el examen", "Estoy preocupado", "Qué rabia", "Estoy tranquilo",
+                        "¿Qué actividades podemos hacer el sábado?")
+                .forEach(message -> assertFalse(matcher.isEmotionRelated(message), message));
+    }
+
+    @Test
+    void testMatch_RequiresWordStart() {
+        assertTrue(matcher.match("Tengo mucha tristeza").contains("tristeza"));
+        assertTrue(matcher.match("Me siento emocionada").contains("general"));
+        assertFalse(matcher.isEmotionRelated("No recuerdo la memoria del teléfono"));
+        assertFalse(matcher.isEmotionRelated("¿Qué actividades podemos hacer el sábado?"));
+    }
+
+    @Test
+    void testMatch_OverlappingKeywords() {
+        EmotionIntentMatcher overlapping = new EmotionIntentMatcher(Map.of(
+                "a", List.of("he", "she"),
+                "b", List.of("hers")));
+
+        assertEquals(Set.of("a", "b"), overlapping.match("hers"));
+        assertEquals(Set.of("a"), overlapping.match("she"));
+        assertEquals(Set.of(), overlapping.match("ashes"));
+    }
+
+    @Test
+    void testMatch_KeepsConfigurationOrder() {
+        Map<String, List<String>> vocabulary = new LinkedHashMap<>();
+        vocabulary.put("miedo", List.of("miedo"));
+        vocabulary.put("alegria", List.of("feliz"));
+        EmotionIntentMatcher ordered = new EmotionIntentMatcher(vocabulary);
+
+        assertEquals(List.of("miedo", "alegria"), List.copyOf(ordered.match("feliz pero con miedo")));
+    }
+
+    @Test
+    void testConstructor_ReadsVocabularyFromConfiguration() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("harmonichat.chatbot.emotion-intent.vocabulary.nostalgia[0]", "nostalgi")
+                .withProperty("harmonichat.chatbot.emotion-intent.vocabulary.nostalgia[1]", "extraño");
+
+        EmotionIntentMatcher configured = new EmotionIntentMatcher(environment);
+
+        assertEquals(Set.of("nostalgia"), configured.match("Extrano mucho a mi abuela"));
+        assertFalse(configured.isEmotionRelated("estoy triste"));
+    }
+
+    @Test
+    void testNormalize() {
+        assertEquals("como me siento hoy", EmotionIntentMatcher.normalize("  ¡Cómo   me SIENTO, hoy!  "));
+    }
+}
@@ -0,0 +1,213 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.chatbot;
+
+import com.harmoniChat.app_hc.configuration.OutboundApiGovernor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeminiChatServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private static String candidate(String text) {
+        return "{\"candidates\":[{\"content\":{\"role\":\"model\",\"parts\":[{\"text\":\"" + text + "\"}]}}]}";
+    }
+
+    private GeminiChatService service(ExchangeFunction exchange) {
+        return service(exchange, false);
+    }
+
+    private GeminiChatService service(ExchangeFunction exchange, boolean contextCache) {
+        return service(exchange, contextCache, false);
+    }
+
+    private GeminiChatService service(ExchangeFunction exchange, boolean contextCache, boolean responseCache) {
+        GeminiClient client = new GeminiClient(WebClient.builder().exchangeFunction(exchange), meterRegistry,
+                new OutboundApiGovernor(meterRegistry, Map.of(), 100, Duration.ofSeconds(5), 100, Duration.ofSeconds(1)),
+                "test-key", 5, Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(1),
+                3, Duration.ofMillis(10), Duration.ofMillis(50));
+        return new GeminiChatService(client,
+                new GeminiContextCache(client, contextCache, Duration.ofHours(1), Duration.ofMinutes(10)),
+                new ChatHistoryBudget(4000, meterRegistry),
+                meterRegistry, responseCache, 100, Duration.ofMinutes(5));
+    }
+
+    private static String body(ClientRequest request) {
+        MockClientHttpRequest written = new MockClientHttpRequest(request.method(), request.url());
+        request.writeTo(written, ExchangeStrategies.withDefaults()).block();
+        return written.getBodyAsString().block();
+    }
+
+    private static ClientResponse json(String body) {
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build();
+    }
+
+    @Test
+    void testStreamChatResponse_EmitsChunksAndRecordsFirstToken() {
+        String body = "data: " + candidate("Hola") + "\n\n"
+                + "data: " + candidate(", familia") + "\n\n"
+                + "data: {\"candidates\":[{\"finishReason\":\"STOP\"}]}\n\n";
+        GeminiChatService service = service(request -> Mono.just(
+                ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_EVENT_STREAM_VALUE)
+                        .body(body)
+                        .build()));
+
+        List<String> chunks = service.streamChatResponse("hola", List.of()).collectList().block();
+
+        assertEquals(List.of("Hola", ", familia"), chunks);
+        assertEquals(1, meterRegistry.get("chatbot.time_to_first_token").timer().count());
+    }
+
+    @Test
+    void testChatResponse_RetriesTooManyRequestsHonoringRetryAfter() {
+        AtomicInteger calls = new AtomicInteger();
+        GeminiChatService service = service(request -> Mono.just(calls.incrementAndGet() == 1
+                ? ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "0").build()
+                : json(candidate("Respuesta"))));
+
+        assertEquals("Respuesta", service.chatResponse("hola", List.of()).block());
+        assertEquals(2, calls.get());
+        assertEquals(1, meterRegistry.get("gemini.client.retries").counter().count());
+    }
+
+    @Test
+    void testChatResponse_GivesUpAfterMaxRetries() {
+        AtomicInteger calls = new AtomicInteger();
+        GeminiChatService service = service(request -> {
+            calls.incrementAndGet();
+            return Mono.just(ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).build());
+        });
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> service.chatResponse("hola", List.of()).block());
+        assertEquals("Demasiadas solicitudes. Por favor intente más tarde.", error.getMessage());
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    void testChatResponse_DoesNotRetryClientErrors() {
+        AtomicInteger calls = new AtomicInteger();
+        GeminiChatService service = service(request -> {
+            calls.incrementAndGet();
+            return Mono.just(ClientResponse.create(HttpStatus.BAD_REQUEST).build());
+        });
+
+        assertThrows(RuntimeException.class, () -> service.chatResponse("hola", List.of()).block());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testChatResponse_SendsPromptAsSystemInstruction() {
+        List<String> bodies = new ArrayList<>();
+        GeminiChatService service = service(request -> {
+            bodies.add(body(request));
+            return Mono.just(json(candidate("Hola")));
+        });
+
+        service.chatResponse("hola", List.of(new ChatMessage("user", "antes"), new ChatMessage("assistant", "respuesta")))
+                .block();
+
+        String sent = bodies.get(0);
+        assertTrue(sent.contains("\"systemInstruction\":{\"parts\":[{\"text\":\"Eres HarmoniBot"));
+        assertFalse(sent.contains("\"role\":\"user\",\"parts\":[{\"text\":\"Eres HarmoniBot"));
+        assertTrue(sent.contains("\"role\":\"model\""));
+        assertFalse(sent.contains("cachedContent"));
+    }
+
+    @Test
+    void testChatResponse_UsesContextCacheAndFallsBackWhenStale() {
+        List<String> paths = new ArrayList<>();
+        List<String> bodies = new ArrayList<>();
+        GeminiChatService service = service(request -> {
+            paths.add(request.url().getPath());
+            String sent = body(request);
+            bodies.add(sent);
+            if (request.url().getPath().endsWith("/cachedContents")) {
+                return Mono.just(json("{\"name\":\"cachedContents/abc\"}"));
+            }
+            if (sent.contains("cachedContents/abc") && paths.size() > 2) {
+                return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+            }
+            return Mono.just(json(candidate("Hola")));
+        }, true);
+
+        assertEquals("Hola", service.chatResponse("hola", List.of()).block());
+        assertEquals("Hola", service.chatResponse("otra vez", List.of()).block());
+
+        // Creación de la caché, uso de la caché, caché rechazada y reintento con la instrucción completa
+        assertEquals(4, paths.size());
+        assertTrue(paths.get(0).endsWith("/cachedContents"));
+        assertTrue(bodies.get(1).contains("\"cachedContent\":\"cachedContents/abc\""));
+        assertFalse(bodies.get(1).contains("systemInstruction"));
+        assertTrue(bodies.get(3).contains("systemInstruction"));
+    }
+
+    @Test
+    void testChatResponse_CachesNormalizedRequests() {
+        AtomicInteger calls = new AtomicInteger();
+        GeminiChatService service = service(request -> {
+            calls.incrementAndGet();
+            return Mono.just(json(candidate("Hola")));
+        }, false, true);
+
+        assertEquals("Hola", service.chatResponse("¿Qué   actividades hacer en familia?", List.of()).block());
+        assertEquals("Hola", service.chatResponse(" ¿qué actividades hacer en familia? ", List.of()).block());
+
+        assertEquals(1, calls.get());
+        assertEquals(0.5, meterRegistry.get("gemini.responses.hit_ratio").gauge().value());
+    }
+
+    @Test
+    void testChatResponse_CoalescesConcurrentIdenticalRequests() {
+        AtomicInteger calls = new AtomicInteger();
+        GeminiChatService service = service(request -> {
+            calls.incrementAndGet();
+            return Mono.just(json(candidate("Hola"))).delayElement(Duration.ofMillis(100));
+        }, false, true);
+
+        List<String> responses = Flux.merge(
+                service.chatResponse("hola", List.of()),
+                service.chatResponse("hola", List.of()),
+                service.chatResponse("hola", List.of())).collectList().block();
+
+        assertEquals(List.of("Hola", "Hola", "Hola"), responses);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testChatResponse_SkipsCacheWithEmotionContext() {
+        AtomicInteger calls = new AtomicInteger();
+        GeminiChatService service = service(request -> {
+            calls.incrementAndGet();
+            return Mono.just(json(candidate("Hola")));
+        }, false, true);
+        String withContext = "me siento triste\n\n" + GeminiChatService.EMOTION_CONTEXT_MARKER + ":\n- Tristeza: 3 veces";
+
+        service.chatResponse(withContext, List.of()).block();
+        service.chatResponse(withContext, List.of()).block();
+
+        assertEquals(2, calls.get());
+    }
+}
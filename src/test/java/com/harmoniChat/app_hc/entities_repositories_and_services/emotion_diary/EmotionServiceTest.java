@@ -23,6 +23,9 @@ class EmotionServiceTest {
     @Mock
     private BlobStorageService blobStorageService;
 
+    @Mock
+    private EmotionSummaryService summaryService;
+
     @Mock
     private MultipartFile file;
 
@@ -95,6 +98,7 @@ class EmotionServiceTest {
 
         assertNotNull(result);
         verify(emotionRepository).save(emotion);
+        verify(summaryService).onSaved(emotion);
     }
 
     @Test
@@ -123,8 +127,11 @@ class EmotionServiceTest {
     void testDeleteById() {
         UUID id = UUID.randomUUID();
 
+        when(emotionRepository.findById(id)).thenReturn(Optional.of(emotion));
+
         emotionService.deleteById(id);
 
+        verify(summaryService).onDeleted(emotion);
         verify(emotionRepository).deleteById(id);
     }
 }
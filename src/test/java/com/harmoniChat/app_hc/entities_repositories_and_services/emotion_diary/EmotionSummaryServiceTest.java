@@ -0,0 +1,106 @@
+package com.harmoniChat.app_hc.entities_repositories_and_services.emotion_diary;
+
+import com.harmoniChat.app_hc.entities_repositories_and_services.emotion_diary.EmotionSummaryService.EmotionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmotionSummaryServiceTest {
+
+    @Mock
+    private EmotionRepository emotionRepository;
+
+    private EmotionSummaryService summaryService;
+    private final UUID userId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        summaryService = new EmotionSummaryService(emotionRepository, new SimpleMeterRegistry(),
+                100, 2, Duration.ofDays(7), Duration.ofHours(1));
+    }
+
+    private Emotion emotion(String name, int daysAgo) {
+        return Emotion.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .name(name)
+                .description("Registro de " + name)
+                .creationDate(LocalDateTime.now().minusDays(daysAgo))
+                .build();
+    }
+
+    @Test
+    void testSummary_CountsRecentAndTrend() {
+        when(emotionRepository.findByUserIdOrderByCreationDateDesc(userId)).thenReturn(List.of(
+                emotion("Alegría", 1), emotion("Tristeza", 2), emotion("Tristeza", 9),
+                emotion("Tristeza", 10), emotion("Calma", 30)));
+
+        EmotionSummary summary = summaryService.summary(userId);
+
+        assertEquals(Map.of("Tristeza", 3, "Alegría", 1, "Calma", 1), summary.counts());
+        assertEquals("Tristeza", summary.counts().keySet().iterator().next());
+        assertEquals(List.of("Alegría", "Tristeza"), summary.recent().stream().map(e -> e.name()).toList());
+        assertEquals(Map.of("Alegría", 1, "Tristeza", -1), summary.trend());
+    }
+
+    @Test
+    void testSummary_LoadsOnlyOnce() {
+        when(emotionRepository.findByUserIdOrderByCreationDateDesc(userId)).thenReturn(List.of(emotion("Calma", 1)));
+
+        summaryService.summary(userId);
+        summaryService.summary(userId);
+
+        verify(emotionRepository, times(1)).findByUserIdOrderByCreationDateDesc(userId);
+    }
+
+    @Test
+    void testOnSaved_UpdatesCountsIncrementally() {
+        Emotion calma = emotion("Calma", 3);
+        when(emotionRepository.findByUserIdOrderByCreationDateDesc(userId)).thenReturn(List.of(calma));
+        summaryService.summary(userId);
+
+        summaryService.onSaved(emotion("Alegría", 0));
+        calma.setName("Tristeza");
+        summaryService.onSaved(calma);
+
+        EmotionSummary summary = summaryService.summary(userId);
+        assertEquals(Map.of("Alegría", 1, "Tristeza", 1), summary.counts());
+        assertEquals("Alegría", summary.recent().get(0).name());
+        verify(emotionRepository, times(1)).findByUserIdOrderByCreationDateDesc(userId);
+    }
+
+    @Test
+    void testOnDeleted_RemovesEntry() {
+        Emotion calma = emotion("Calma", 1);
+        Emotion alegria = emotion("Alegría", 2);
+        when(emotionRepository.findByUserIdOrderByCreationDateDesc(userId)).thenReturn(List.of(calma, alegria));
+        summaryService.summary(userId);
+
+        summaryService.onDeleted(calma);
+
+        EmotionSummary summary = summaryService.summary(userId);
+        assertEquals(Map.of("Alegría", 1), summary.counts());
+        assertEquals(1, summary.recent().size());
+    }
+
+    @Test
+    void testOnSaved_IgnoresUsersNotLoaded() {
+        summaryService.onSaved(emotion("Calma", 0));
+
+        when(emotionRepository.findByUserIdOrderByCreationDateDesc(userId)).thenReturn(List.of());
+        assertTrue(summaryService.summary(userId).isEmpty());
+    }
+}